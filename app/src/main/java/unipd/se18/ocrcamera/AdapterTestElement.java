@@ -5,6 +5,7 @@ import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.Display;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -17,6 +18,9 @@ import android.widget.TextView;
 import org.json.JSONException;
 
 import java.text.DecimalFormat;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Adapter for the view of the processing result of the pics
@@ -39,6 +43,21 @@ public class AdapterTestElement extends BaseAdapter
      */
     private final String TAG = "AdapterTestElement";
 
+    /**
+     * Thread decoding the pics, so that the list scrolls without waiting for the disk
+     */
+    private final ExecutorService picLoader = Executors.newSingleThreadExecutor();
+
+    /**
+     * Pics already scaled to the width of the screen, by position, the least recently shown are dropped
+     */
+    private final LruCache<Integer, Bitmap> pics;
+
+    /**
+     * Positions of the pics being decoded, used only on the UI thread
+     */
+    private final HashSet<Integer> loadingPics = new HashSet<>();
+
     /**
      * Defines an object of AdapterTestElement type
      * @param context The reference to the activity where the adapter will be used
@@ -48,6 +67,23 @@ public class AdapterTestElement extends BaseAdapter
     {
         this.context = context;
         this.entries = entries;
+
+        // An eighth of the memory of the app for the pics, sized in KB
+        int cacheSize = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        pics = new LruCache<Integer, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(Integer position, Bitmap pic) {
+                return pic.getByteCount() / 1024;
+            }
+        };
+    }
+
+    /**
+     * Stops decoding the pics, to call when the adapter is no more used
+     */
+    void close() {
+        picLoader.shutdownNow();
+        pics.evictAll();
     }
 
     @Override
@@ -91,30 +127,20 @@ public class AdapterTestElement extends BaseAdapter
             String picName = entries[position].getFileName();
             name.setText(picName);
 
-            // Set the pic view
+            // Set the pic view, decoded in background the first time
             ImageView analyzedPic = convertView.findViewById(R.id.pic_view);
-            Bitmap img = entries[position].getPicture();
-
-            // Scaling the pic view
-            int imgWidth = img.getWidth();
-            int imgHeight = img.getHeight();
-            WindowManager mWindowManager = (WindowManager) convertView.getContext()
-                    .getSystemService(Context.WINDOW_SERVICE);
-            DisplayMetrics mDisplayMetrics = new DisplayMetrics();
-            Display mDisplay = mWindowManager.getDefaultDisplay();
-            mDisplay.getMetrics(mDisplayMetrics);
-            int scaledWidth = mDisplayMetrics.widthPixels;
-            int scaledHeight = (scaledWidth*imgHeight)/imgWidth;
-
-            Log.v(TAG,"pic \"" + picName + "\" scaled from " + imgWidth + "x" + imgHeight +
-                    " to " + scaledWidth + "x" + scaledHeight);
-            analyzedPic.setImageBitmap(Bitmap.createScaledBitmap(img, scaledWidth, scaledHeight,false));
+            analyzedPic.setTag(position);
+            Bitmap pic = pics.get(position);
+            analyzedPic.setImageBitmap(pic);
+            if(pic == null) {
+                loadPic(position, analyzedPic);
+            }
 
             // Set the Tags text
             TextView tags = convertView.findViewById(R.id.tags_view);
             StringBuilder assignedTags = new StringBuilder();
-            for(String tag: entries[position].getTags()) {
-                assignedTags.append(tag).append(", ");
+            for(int tagId: entries[position].getTagIds()) {
+                assignedTags.append(TagDictionary.getName(tagId)).append(", ");
             }
             tags.setText(assignedTags.toString());
 
@@ -141,4 +167,61 @@ public class AdapterTestElement extends BaseAdapter
         return convertView;
 
     }
+
+    /**
+     * Decodes the pic of an entry on picLoader and shows it if the view still shows the entry
+     * @param position position of the entry
+     * @param view view of the pic, tagged with the position of the entry it shows
+     */
+    private void loadPic(final int position, final ImageView view) {
+        if(!loadingPics.add(position)) {
+            return;
+        }
+        WindowManager mWindowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        DisplayMetrics mDisplayMetrics = new DisplayMetrics();
+        Display mDisplay = mWindowManager.getDefaultDisplay();
+        mDisplay.getMetrics(mDisplayMetrics);
+        final int scaledWidth = mDisplayMetrics.widthPixels;
+        final String picName = entries[position].getFileName();
+
+        picLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Decoding only the resolution needed by the screen
+                Bitmap img = entries[position].getPicture(scaledWidth);
+                Bitmap scaled = null;
+                if(img != null) {
+                    // Scaling the pic view
+                    int imgWidth = img.getWidth();
+                    int imgHeight = img.getHeight();
+                    int scaledHeight = (scaledWidth*imgHeight)/imgWidth;
+
+                    Log.v(TAG,"pic \"" + picName + "\" scaled from " + imgWidth + "x" + imgHeight +
+                            " to " + scaledWidth + "x" + scaledHeight);
+                    scaled = Bitmap.createScaledBitmap(img, scaledWidth, scaledHeight,false);
+                    if(scaled != img) {
+                        img.recycle();
+                    }
+                } else {
+                    Log.e(TAG, "pic \"" + picName + "\" can't be decoded");
+                }
+
+                final Bitmap pic = scaled;
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        loadingPics.remove(position);
+                        if(pic == null) {
+                            return;
+                        }
+                        pics.put(position, pic);
+                        // The view may have been reused for another entry meanwhile
+                        if(Integer.valueOf(position).equals(view.getTag())) {
+                            view.setImageBitmap(pic);
+                        }
+                    }
+                });
+            }
+        });
+    }
 }
\ No newline at end of file
@@ -0,0 +1,300 @@
+package unipd.se18.ocrcamera;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * OCR that downscales the image before the recognition when the text is big enough to stay legible:
+ * the cost of the recognition grows with the number of pixels, not with the size of the text.
+ * The height of the lines of text is estimated on a thumbnail, then the image is downscaled by the
+ * largest factor that keeps the lines at least TARGET_LINE_HEIGHT pixels high.
+ * If the text recognized at the lower resolution looks poor, the recognition is repeated at full resolution.
+ */
+class AdaptiveResolutionOcr implements OCRInterface {
+
+    private static final String TAG = "AdaptiveResolutionOcr";
+
+    /**
+     * Downscale factors that can be chosen, the resolution tiers
+     */
+    static final int[] DOWNSCALE_FACTORS = {1, 2, 4};
+
+    /**
+     * Height in pixels of a line of text (ascenders and descenders included) that the OCR reads reliably
+     */
+    static final float TARGET_LINE_HEIGHT = 32;
+
+    /**
+     * Below this quality (see textQuality()) a text recognized at low resolution is recognized again at full resolution
+     */
+    static final double MIN_TEXT_QUALITY = 0.5;
+
+    //width of the thumbnail used to estimate the size of the text
+    private static final int THUMBNAIL_WIDTH = 512;
+
+    //minimum difference of luminance between adjacent pixels to be an edge of a character
+    private static final int EDGE_THRESHOLD = 40;
+
+    private final OCRInterface engine;
+
+    //downscale factor used for every image, 0 to choose it for each image
+    private final int fixedFactor;
+
+    /**
+     * @param engine OCR doing the recognition
+     */
+    AdaptiveResolutionOcr(OCRInterface engine) {
+        this(engine, 0);
+    }
+
+    /**
+     * @param engine OCR doing the recognition
+     * @param fixedFactor downscale factor used for every image without fallback, 0 to choose it for each image
+     */
+    AdaptiveResolutionOcr(OCRInterface engine, int fixedFactor) {
+        this.engine = engine;
+        this.fixedFactor = fixedFactor;
+    }
+
+    @Override
+    public String getTextFromImg(Bitmap img) {
+        OcrFuture text = new OcrFuture();
+        getTextFromImg(img, text);
+        try {
+            return text.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXTRACTION_FAILED;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "getTextFromImg -> " + e.getCause());
+            return EXTRACTION_FAILED;
+        }
+    }
+
+    @Override
+    public void getTextFromImg(Bitmap img, final OCRListener listener) {
+        extract(img, chooseDownscaleFactor(img), new ResultListener() {
+            @Override
+            public void onTextRecognized(String text, int factor, boolean fallback) {
+                listener.onTextRecognized(text);
+            }
+
+            @Override
+            public void onTextRecognitionFailed(Exception e) {
+                listener.onTextRecognitionFailed(e);
+            }
+        });
+    }
+
+    /**
+     * Receives the result of extract(), with the resolution used
+     */
+    interface ResultListener {
+        /**
+         * @param text the text recognized
+         * @param factor downscale factor of the first recognition
+         * @param fallback true if the text has been recognized again at full resolution
+         */
+        void onTextRecognized(String text, int factor, boolean fallback);
+
+        /**
+         * @param e the reason of the failure
+         */
+        void onTextRecognitionFailed(Exception e);
+    }
+
+    /**
+     * Recognizes the text of the image downscaled by a factor, falling back to full resolution if the text looks poor
+     * @param img The image in a Bitmap format
+     * @param factor downscale factor, one of DOWNSCALE_FACTORS
+     * @param listener receives the text and the resolution used
+     */
+    void extract(final Bitmap img, final int factor, final ResultListener listener) {
+        final Bitmap scaled = downscale(img, factor);
+        final boolean canFallBack = fixedFactor == 0 && factor > 1;
+        engine.getTextFromImg(scaled, new OCRListener() {
+            @Override
+            public void onTextRecognized(String text) {
+                if(scaled != img) {
+                    scaled.recycle();
+                }
+                if(!canFallBack || textQuality(text) >= MIN_TEXT_QUALITY) {
+                    listener.onTextRecognized(text, factor, false);
+                    return;
+                }
+
+                Log.d(TAG, "extract -> poor text at 1/" + factor + " resolution, recognizing at full resolution");
+                engine.getTextFromImg(img, new OCRListener() {
+                    @Override
+                    public void onTextRecognized(String text) {
+                        listener.onTextRecognized(text, factor, true);
+                    }
+
+                    @Override
+                    public void onTextRecognitionFailed(Exception e) {
+                        listener.onTextRecognitionFailed(e);
+                    }
+                });
+            }
+
+            @Override
+            public void onTextRecognitionFailed(Exception e) {
+                if(scaled != img) {
+                    scaled.recycle();
+                }
+                listener.onTextRecognitionFailed(e);
+            }
+        });
+    }
+
+    /**
+     * @param img The image in a Bitmap format
+     * @return the downscale factor to use for the image
+     */
+    int chooseDownscaleFactor(Bitmap img) {
+        if(fixedFactor > 0) {
+            return fixedFactor;
+        }
+        LuminanceImage thumbnail = LuminanceImage.fromBitmap(img, THUMBNAIL_WIDTH);
+        if(thumbnail == null) {
+            return 1;
+        }
+        float lineHeight = estimateLineHeight(thumbnail) * img.getWidth() / thumbnail.getWidth();
+        int factor = chooseDownscaleFactor(lineHeight);
+        Log.d(TAG, "chooseDownscaleFactor -> line height == " + lineHeight + " px, factor == " + factor);
+        return factor;
+    }
+
+    /**
+     * @param lineHeight height of the lines of text in pixels at full resolution, NaN if unknown
+     * @return the largest downscale factor keeping the lines at least TARGET_LINE_HEIGHT high, 1 if the height is unknown
+     */
+    static int chooseDownscaleFactor(float lineHeight) {
+        int chosen = 1;
+        for(int factor : DOWNSCALE_FACTORS) {
+            if(lineHeight / factor >= TARGET_LINE_HEIGHT && factor > chosen) {
+                chosen = factor;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Estimates the height of the lines of text: the rows crossing some text have more edges
+     * (big changes of luminance between adjacent pixels) than the average row, a line of text is
+     * a run of such rows.
+     * @param image the image
+     * @return median height of the lines of text in pixels, NaN if no text is found
+     */
+    static float estimateLineHeight(LuminanceImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] edges = new int[height];
+        long totalEdges = 0;
+        for(int y = 0; y < height; y++) {
+            for(int x = 1; x < width; x++) {
+                if(Math.abs(image.get(x, y) - image.get(x - 1, y)) > EDGE_THRESHOLD) {
+                    edges[y]++;
+                }
+            }
+            totalEdges += edges[y];
+        }
+        if(totalEdges == 0) {
+            return Float.NaN;
+        }
+
+        //a row crosses some text if it has more edges than the average row
+        double threshold = Math.max(2, (double) totalEdges / height);
+        int[] runs = new int[height];
+        int count = 0;
+        int run = 0;
+        for(int y = 0; y <= height; y++) {
+            if(y < height && edges[y] > threshold) {
+                run++;
+            } else {
+                //runs of a single row are noise
+                if(run > 1) {
+                    runs[count++] = run;
+                }
+                run = 0;
+            }
+        }
+        if(count == 0) {
+            return Float.NaN;
+        }
+        Arrays.sort(runs, 0, count);
+        return runs[count / 2];
+    }
+
+    /**
+     * Estimates if a text recognized by the OCR is made of real words, without knowing the correct text
+     * @param text text recognized
+     * @return the fraction of the characters belonging to words that look real (at least 3 letters with a vowel), between 0 and 1
+     */
+    static double textQuality(String text) {
+        int totalChars = 0;
+        int wordChars = 0;
+        for(String token : text.split("[\\s,.:;()/]+")) {
+            if(token.isEmpty()) {
+                continue;
+            }
+            totalChars += token.length();
+            if(looksLikeWord(token)) {
+                wordChars += token.length();
+            }
+        }
+        return totalChars == 0 ? 0 : (double) wordChars / totalChars;
+    }
+
+    private static boolean looksLikeWord(String token) {
+        int letters = 0;
+        boolean vowel = false;
+        for(int i = 0; i < token.length(); i++) {
+            char c = Character.toLowerCase(token.charAt(i));
+            if(Character.isLetter(c)) {
+                letters++;
+                vowel |= "aeiouy".indexOf(c) >= 0;
+            } else if(c != '-' && !Character.isDigit(c)) {
+                return false;
+            }
+        }
+        return letters >= 3 && vowel;
+    }
+
+    /**
+     * @param img The image in a Bitmap format
+     * @param factor downscale factor
+     * @return the downscaled image, img itself if the factor is 1
+     */
+    static Bitmap downscale(Bitmap img, int factor) {
+        if(factor <= 1) {
+            return img;
+        }
+        return Bitmap.createScaledBitmap(img, Math.max(1, img.getWidth() / factor),
+                Math.max(1, img.getHeight() / factor), true);
+    }
+
+    @Override
+    public String getVersion() {
+        return engine.getVersion() + getPolicy(fixedFactor);
+    }
+
+    /**
+     * @param fixedFactor downscale factor used for every image, 0 if chosen for each image
+     * @return description of the choice of the resolution, appended to the version of the engine
+     */
+    static String getPolicy(int fixedFactor) {
+        return fixedFactor > 0 ? " downscale 1/" + fixedFactor : " adaptive resolution";
+    }
+
+    /**
+     * @param factor downscale factor
+     * @return name of the resolution tier
+     */
+    static String getTierName(int factor) {
+        return factor <= 1 ? "full resolution" : "1/" + factor + " resolution";
+    }
+}
@@ -0,0 +1,168 @@
+package unipd.se18.ocrcamera;
+
+import android.util.Log;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stage of a processing pipeline whose work ends asynchronously, as the OCR: no thread waits for
+ * the items being processed. At most maxInFlight items are processed at the same time and put()
+ * blocks while they are all in flight, so a slow stage still slows down the ones before it.
+ * The thread notifying the end of an item hands the result to the next stage.
+ * @param <I> type of the items received by the stage
+ * @param <O> type of the items passed to the next stage
+ */
+class AsyncPipelineStage<I, O> implements PipelineSink<I> {
+
+    /**
+     * Work done by the stage on each item
+     * @param <I> type of the input items
+     * @param <O> type of the output items
+     */
+    interface Processor<I, O> {
+        /**
+         * Starts the work on an item and returns without waiting for it
+         * @param item item to process
+         * @param callback to call once when the work ends, on any thread
+         * @throws Exception if the work can't be started, the item is dropped
+         */
+        void start(I item, Callback<O> callback) throws Exception;
+    }
+
+    /**
+     * Receives the end of the work on an item
+     * @param <O> type of the output items
+     */
+    interface Callback<O> {
+        /**
+         * @param result the item for the next stage, null to drop it
+         */
+        void onDone(O result);
+
+        /**
+         * @param e the reason of the failure, the item is dropped
+         */
+        void onFailed(Exception e);
+    }
+
+    private static final String TAG = "AsyncPipelineStage";
+
+    private final String name;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Processor<I, O> processor;
+    private final PipelineSink<O> next;
+    private volatile PipelineStage.DropListener<? super I> dropListener;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param name name of the stage, used for logs
+     * @param maxInFlight maximum number of items processed at the same time, at least 1
+     * @param processor work done on each item
+     * @param next receiver of the processed items
+     */
+    AsyncPipelineStage(String name, int maxInFlight, Processor<I, O> processor, PipelineSink<O> next) {
+        this.name = name;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.processor = processor;
+        this.next = next;
+    }
+
+    /**
+     * @param dropListener notified of the items dropped by this stage, should be set before putting items
+     */
+    void setDropListener(PipelineStage.DropListener<? super I> dropListener) {
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Starts the work on the item, waiting first while maxInFlight items are in flight
+     * @param item item to process
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void put(I item) throws InterruptedException {
+        inFlight.acquire();
+        ItemCallback callback = new ItemCallback(item);
+        if (cancelled) {
+            callback.onDone(null);
+            return;
+        }
+        try {
+            processor.start(item, callback);
+        } catch (Exception e) {
+            Log.e(TAG, "stage \"" + name + "\" failed starting an item", e);
+            callback.onFailed(e);
+        }
+    }
+
+    /**
+     * Waits for the items in flight, then finishes the next stage
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void finish() throws InterruptedException {
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        Log.d(TAG, "stage \"" + name + "\" finished");
+        next.finish();
+    }
+
+    /**
+     * Drops the items ending from now on and cancels the following stages
+     */
+    void cancel() {
+        cancelled = true;
+        if (next instanceof PipelineStage) {
+            ((PipelineStage) next).cancel();
+        }
+    }
+
+    private void drop(I item) {
+        PipelineStage.DropListener<? super I> dropListener = this.dropListener;
+        if (dropListener != null) {
+            dropListener.onDropped(item);
+        }
+    }
+
+    /**
+     * Callback of an item, frees its slot once the result has been handed to the next stage
+     */
+    private class ItemCallback implements Callback<O> {
+        private final I item;
+        private final AtomicBoolean called = new AtomicBoolean(false);
+
+        ItemCallback(I item) {
+            this.item = item;
+        }
+
+        @Override
+        public void onDone(O result) {
+            if (called.getAndSet(true)) {
+                Log.w(TAG, "stage \"" + name + "\" item ended twice");
+                return;
+            }
+            try {
+                if (result != null && !cancelled) {
+                    next.put(result);
+                } else {
+                    drop(item);
+                }
+            } catch (InterruptedException e) {
+                Log.w(TAG, "stage \"" + name + "\" interrupted");
+                Thread.currentThread().interrupt();
+                drop(item);
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            Log.e(TAG, "stage \"" + name + "\" failed processing an item", e);
+            onDone(null);
+        }
+    }
+}
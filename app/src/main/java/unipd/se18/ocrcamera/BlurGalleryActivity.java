@@ -1,7 +1,6 @@
 package unipd.se18.ocrcamera;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.os.Environment;
 import android.support.v7.app.AppCompatActivity;
@@ -11,11 +10,11 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
-
-import static android.graphics.BitmapFactory.decodeStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Testing Activity to see if blur could work, shows a gallery with each image associated with it's blur value
  * Leonardo Pratesi - gruppo 1
@@ -46,12 +45,53 @@ public class BlurGalleryActivity extends AppCompatActivity {
      */
     private String fileNames[];
 
+    /**
+     * Width of the thumbnails kept in arrayBlur, the full images are never kept in memory
+     */
+    private static final int THUMBNAIL_WIDTH = 192;
+
+    /**
+     * Pool decoding the images and computing their blur value
+     */
+    private ExecutorService loader;
+
+    /**
+     * Blur values of the images already measured, loaded by the first task of the loader
+     */
+    private volatile QualityScoreCache qualityCache;
+
+    /**
+     * Images still to load, the cache is saved by the loader when the last one is done
+     */
+    private final AtomicInteger pendingLoads = new AtomicInteger();
+
+    /**
+     * Set when the gallery is closed, the images not loaded yet are then skipped
+     */
+    private volatile boolean closed = false;
+
+    private BlurObjectAdapter adapter;
+    private TextView maxview;
+
+    /**
+     * Max blur value of the images loaded so far
+     */
+    private double maxBlur = 0;
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         setContentView(R.layout.listlayout);
         super.onCreate(savedInstanceState);
 
+        //View preparation
+        listView = (ListView) findViewById(R.id.listview);
+        adapter = new BlurObjectAdapter(this, R.layout.listlayout, arrayBlur);
+        listView.setAdapter(adapter);
+        //show max blur value
+        maxview = findViewById(R.id.textViewMax);
+        maxview.setText(String.valueOf(maxBlur));
+
         File path = new File(PHOTOS_FOLDER);
         fileNames = path.list();
         if (fileNames != null) {
@@ -62,78 +102,149 @@ public class BlurGalleryActivity extends AppCompatActivity {
             this.finish();
             //Exit from Gallery
         }
+    }
 
-        //View preparation
-        listView = (ListView) findViewById(R.id.listview);
-        BlurObjectAdapter adapter = new BlurObjectAdapter(this, R.layout.listlayout, arrayBlur);
-        listView.setAdapter(adapter);
-        //show max blur value
-        TextView maxview = findViewById(R.id.textViewMax);
-        maxview.setText(String.valueOf(findMax(arrayBlur)));
-
-
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (loader != null) {
+            //the images not loaded yet are skipped, the blur values measured are still saved by the loader
+            closed = true;
+            loader.shutdown();
+        }
     }
 
     /**
-     * Method that creates a blurObject for every image in the folder
-     *
+     * Method that creates a blurObject for every image in the folder.
+     * The list is shown immediately, the thumbnails and the blur values are loaded in background
+     * and each row is filled in as soon as its image is ready
      */
     private void setGallery() {
-        int count =0;
+        final ArrayList<Runnable> loads = new ArrayList<>();
         for (int i = 0; i < fileNames.length; i++) {                                                          //imagepath.length = number of elements in the folder
-            if (getExtension(fileNames[i]) == "jpg") {                                          //checks if it is an image
+            String extension = getExtension(fileNames[i]);
+            if ("jpg".equalsIgnoreCase(extension) || "jpeg".equalsIgnoreCase(extension)) {                           //checks if it is an image
+                final BlurObject obj = new BlurObject(fileNames[i]);
+                final File f = new File(PHOTOS_FOLDER, fileNames[i]);
+                arrayBlur.add(obj);
+                loads.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!closed) {
+                                loadImage(obj, f);
+                            }
+                        } finally {
+                            //the blur values measured are kept for the next time
+                            if (pendingLoads.decrementAndGet() == 0) {
+                                qualityCache.save();
+                            }
+                        }
+                    }
+                });
+            }
+        }
 
+        pendingLoads.set(loads.size());
+        loader = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        //the cache is read once, before loading the images
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                qualityCache = QualityScoreCache.forDirectory(new File(PHOTOS_FOLDER));
+                if (loads.isEmpty()) {
+                    //only drops the images deleted from the folder
+                    qualityCache.save();
+                }
+                int submitted = 0;
                 try {
-                    File f = new File(PHOTOS_FOLDER, fileNames[i]);                             //creates a new object for each element
-                    Bitmap image = BitmapFactory.decodeStream(new FileInputStream(f));
-                    BlurObject obj = new BlurObject(fileNames[i], image);
-                    arrayBlur.add(obj);
-
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                    Log.e("err", "filenotfound");
-                } catch (IllegalArgumentException e) {
-                    e.printStackTrace();
-                    Log.e("err", "illegalargument");
+                    for (Runnable load : loads) {
+                        loader.execute(load);
+                        submitted++;
+                    }
+                } catch (RejectedExecutionException e) {
+                    //the gallery has been closed, the loads not submitted will never end:
+                    //if the submitted ones already ended, the blur values are saved here
+                    if (pendingLoads.addAndGet(submitted - loads.size()) == 0) {
+                        qualityCache.save();
+                    }
                 }
-                count++; //check how many photos load
-                Log.e("check", Integer.toString(count));
             }
-        }
+        });
+        adapter.notifyDataSetChanged();
+        Log.d("check", "Loading " + arrayBlur.size() + " photos");
     }
 
     /**
-     *  Method to show the max value of the blur
-     * @param list list of BlurObject
-     * @return double value
+     * Decodes a subsampled version of the image, computes its blur value and keeps only a thumbnail.
+     * The blur value is taken from the cache when the image didn't change, then only the thumbnail is decoded.
+     * Runs on the loader pool, the object is updated on the UI thread
+     * @param obj object of the image
+     * @param file file of the image
      */
-    public double findMax(ArrayList<BlurObject> list){
-
-        double max=0;
-        double temp=0;
-        for (int i = 0; i < list.size(); i++)
-        {
-            temp=list.get(i).getBlur();
-            if (max<list.get(i).getBlur())
-            {
-                max=temp;
+    private void loadImage(final BlurObject obj, File file) {
+        ImageQuality quality = qualityCache.get(file);
+
+        //subsampled to the width analyzed for the blur, the full image is never decoded
+        int reqWidth = quality == null ? ImageQualityAnalyzer.ANALYSIS_WIDTH : THUMBNAIL_WIDTH;
+        Bitmap image = Utils.loadBitmapFromFile(file.getPath(), reqWidth);
+        if (image == null) {
+            Log.e("err", "can't decode " + file.getPath());
+            return;
+        }
+
+        if (quality == null) {
+            quality = ImageQualityAnalyzer.analyze(image);
+            if (quality != null) {
+                qualityCache.put(file, quality);
+            }
+        }
+        final double blur = quality == null ? 0 : quality.getSharpness();
+
+        Bitmap thumbnail = image;
+        if (image.getWidth() > THUMBNAIL_WIDTH) {
+            int thumbnailHeight = Math.max(1, image.getHeight() * THUMBNAIL_WIDTH / image.getWidth());
+            thumbnail = Bitmap.createScaledBitmap(image, THUMBNAIL_WIDTH, thumbnailHeight, true);
+            image.recycle();
+        }
+
+        final Bitmap finalThumbnail = thumbnail;
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isFinishing()) {
+                    return;
+                }
+                obj.setLoaded(finalThumbnail, blur);
+                adapter.notifyDataSetChanged();
+                updateMax(blur);
             }
+        });
+    }
+
+    /**
+     *  Method to show the max value of the blur, updated each time an image is loaded
+     * @param blur blur value of the image just loaded
+     */
+    private void updateMax(double blur) {
+        if (blur > maxBlur) {
+            maxBlur = blur;
+            maxview.setText(String.valueOf(maxBlur));
         }
-        return max;
     }
 
 
     /**
      * Method to get file extension leonardo Pratesi
      * @param file
-     * @return file extension
+     * @return file extension, empty string if the file has no extension
      */
     public String getExtension(String file) {
         int dotposition = file.lastIndexOf(".");
-        String filename_Without_Ext = file.substring(0, dotposition);
-        String ext = file.substring(dotposition + 1, file.length());
-        Log.e(ext, ext);
-        return ext;
+        if (dotposition < 0) {
+            return "";
+        }
+        return file.substring(dotposition + 1, file.length());
 
     }
 
@@ -5,7 +5,7 @@ import android.graphics.Bitmap;
 
 /** Class that holds the bitmap, the name , and the blur value calculated
  *  Pratesi Leonardo
- *
+ *  The bitmap and the blur value can be loaded after the creation, see setLoaded()
  */
 
 public class BlurObject {
@@ -19,11 +19,42 @@ public class BlurObject {
         this.blur=blur;
     }
 
+    /**
+     * Object still loading, without bitmap and blur value
+     * @param name name of the image
+     */
+    public BlurObject(String name)
+    {
+        this.name=name;
+        this.image=null;
+        this.blur=Double.NaN;
+    }
+
     public BlurObject(String name, Bitmap image)
     {
         this.name=name;
         this.image=image;
-        this.blur= CameraActivity.blurValue(this.image);
+        //variance of the Laplacian, lower values are more blurry
+        ImageQuality quality = ImageQualityAnalyzer.analyze(this.image);
+        this.blur= quality == null ? 0 : quality.getSharpness();
+    }
+
+    /**
+     * @param image the bitmap, usually a thumbnail
+     * @param blur the blur value
+     */
+    public void setLoaded(Bitmap image, double blur)
+    {
+        this.image=image;
+        this.blur=blur;
+    }
+
+    /**
+     * @return false until the bitmap and the blur value are set
+     */
+    public boolean isLoaded()
+    {
+        return !Double.isNaN(blur);
     }
 
     public Bitmap getImage()
@@ -40,7 +71,7 @@ public class BlurObject {
 
     public String toString()
     {
-        return name + " " + Double.toString(blur);
+        return isLoaded() ? name + " " + Double.toString(blur) : name;
     }
 
 
@@ -0,0 +1,61 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Chooses the best frame of a burst, the one most likely to be read by the OCR: the frames are
+ * scored by their sharpness, reduced when the phone was moving at capture time
+ * @param <T> type of the frames
+ */
+class BurstSelector<T> {
+
+    /**
+     * Width at which the frames are decoded to measure their sharpness, small to keep the scoring cheap
+     */
+    static final int SCORE_WIDTH = 256;
+
+    /**
+     * Motion (see MotionMeter) at which the score of a frame is halved
+     */
+    static final double REFERENCE_MOTION = 0.5;
+
+    private T best = null;
+    private double bestScore = Double.NEGATIVE_INFINITY;
+    private int size = 0;
+
+    /**
+     * @param sharpness sharpness of the frame, see ImageQuality.getSharpness()
+     * @param motion motion of the phone when the frame was captured, see MotionMeter.getMotion()
+     * @return score of the frame, higher is better
+     */
+    static double score(double sharpness, double motion) {
+        return sharpness / (1 + motion / REFERENCE_MOTION);
+    }
+
+    /**
+     * @param frame frame of the burst
+     * @param sharpness sharpness of the frame, see ImageQuality.getSharpness()
+     * @param motion motion of the phone when the frame was captured, see MotionMeter.getMotion()
+     */
+    synchronized void add(T frame, double sharpness, double motion) {
+        double score = score(sharpness, motion);
+        //the first frame wins the ties, it's the closest to the tap
+        if(score > bestScore) {
+            best = frame;
+            bestScore = score;
+        }
+        size++;
+    }
+
+    /**
+     * @return the frame with the highest score, null if no frame has been added
+     */
+    synchronized T getBest() {
+        return best;
+    }
+
+    /**
+     * @return number of frames added
+     */
+    synchronized int size() {
+        return size;
+    }
+}
@@ -4,13 +4,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
@@ -18,7 +14,9 @@ import android.view.View;
 import com.camerakit.CameraKitView;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The Activity useful for making photos
@@ -26,7 +24,54 @@ import java.io.OutputStream;
 public class CameraActivity extends AppCompatActivity {
 
     private CameraKitView cameraKitView;
-    private static String orientationResult;
+
+    /**
+     * Orientation of the phone, listened only while the activity is visible
+     */
+    private DeviceOrientation deviceOrientation;
+
+    /**
+     * Boolean preference, true to record the readings of the sensors while the activity is visible.
+     * Switched from the menu of ResultActivity
+     */
+    static final String PREF_RECORD_SENSOR_TRACE = "recordSensorTrace";
+
+    /**
+     * Readings of the sensors recorded while the activity is visible, null if not recorded
+     */
+    private SensorTrace sensorTrace;
+
+    /**
+     * Number of photos taken by a burst, with a long press on the button
+     */
+    private static final int BURST_SIZE = 4;
+
+    /**
+     * Maximum time in milliseconds of a burst, after which the readings are batched again
+     * even if the camera hasn't delivered every photo
+     */
+    private static final long BURST_TIMEOUT_MS = 5000;
+
+    /**
+     * Ends the low latency of the readings started by a burst, see takeBurst()
+     */
+    private final Handler burstHandler = new Handler();
+    private final Runnable endLowLatency = new Runnable() {
+        @Override
+        public void run() {
+            deviceOrientation.setLowLatency(false);
+        }
+    };
+
+    /**
+     * Motion of the phone, used to choose the best photo of a burst
+     */
+    private final MotionMeter motionMeter = new MotionMeter();
+
+    /**
+     * Thread scoring the photos of the bursts
+     */
+    private final ExecutorService burstScorer = Executors.newSingleThreadExecutor();
 
     /**
      * onCreate method of the Android Activity Lifecycle
@@ -40,88 +85,46 @@ public class CameraActivity extends AppCompatActivity {
 
         cameraKitView = findViewById(R.id.cameraKitView);
 
-        //Load sensor for understand the orientation of the phone
+        //orientation of the phone, rotating the button, and its motion during a burst
+        final View takePicButton = findViewById(R.id.take_photo_button);
         SensorManager sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
-        sensorManager.registerListener(new SensorEventListener() {
-            public int mOrientationDeg; //last rotation in degrees
-            private static final int _DATA_X = 0;
-            private static final int _DATA_Y = 1;
-            private static final int _DATA_Z = 2;
-            private int ORIENTATION_UNKNOWN = -1;
-
+        deviceOrientation = new DeviceOrientation(sensorManager, motionMeter, new DeviceOrientation.Listener() {
             @Override
-            public void onSensorChanged(SensorEvent event)
-            {
-                float[] values = event.values;
-                int orientation = ORIENTATION_UNKNOWN;
-                float X = -values[_DATA_X];
-                float Y = -values[_DATA_Y];
-                float Z = -values[_DATA_Z];
-                float magnitude = X*X + Y*Y;
-                // Don't trust the angle if the magnitude is small compared to the y value
-                if (magnitude * 4 >= Z*Z) {
-                    float OneEightyOverPi = 57.29577957855f;
-                    float angle = (float)Math.atan2(-Y, X) * OneEightyOverPi;
-                    orientation = 90 - (int)Math.round(angle);
-                    // normalize to 0 - 359 range
-                    while (orientation >= 360) {
-                        orientation -= 360;
-                    }
-                    while (orientation < 0) {
-                        orientation += 360;
-                    }
-                }
-                //now we must figure out which orientation based on the degrees
-                if (orientation != mOrientationDeg)
-                {
-                    mOrientationDeg = orientation;
-
-                    View takePicButton = findViewById(R.id.take_photo_button);
-
-                    //figure out actual orientation
-                    if(orientation == -1){//basically flat
-                    }
-                    else if(orientation <= 45 || orientation > 315){//round to 0
-                        Log.d("Sensor", "P"); //Portrait
-                        orientationResult="P";
-                        takePicButton.setRotation(0); //rotate take picture button
-                    }
-                    else if(orientation > 45 && orientation <= 135){//round to 90
-                        Log.d("Sensor", "LR"); //LandscapeRight
-                        orientationResult="LR";
-                        takePicButton.setRotation(270);
-                    }
-                    else if(orientation > 135 && orientation <= 225){//round to 180
-                        Log.d("Sensor", "PU"); //PortraitUpside
-                        orientationResult="PU";
-                        takePicButton.setRotation(180);
-                    }
-                    else if(orientation > 225 && orientation <= 315){//round to 270
-                        Log.d("Sensor", "LL"); //LandscapeLeft
-                        orientationResult="LL";
-                        takePicButton.setRotation(90);
-                    }
-
-                }
-            }
-
-            @Override
-            public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            public void onRotationChanged(int rotation) {
+                //the button is turned back, so that it stays upright
+                takePicButton.setRotation((360 - rotation) % 360);
             }
-        }, sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER), SensorManager.SENSOR_DELAY_NORMAL);
+        });
 
         FloatingActionButton mButtonTakePhoto = findViewById(R.id.take_photo_button);
         mButtonTakePhoto.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                SharedPreferences prefs = getSharedPreferences("prefs", MODE_PRIVATE);
-                SharedPreferences.Editor edit = prefs.edit();
-                edit.putString("text", null);
-                edit.putString("imageDataPath", null);
-                edit.apply();
+                resetLastResult();
                 takePhoto();
             }
         });
+        mButtonTakePhoto.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                resetLastResult();
+                takeBurst();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Resets the text extracted from the last photo, before taking a new one
+     *
+     * @modify SharedPreferences
+     */
+    private void resetLastResult() {
+        SharedPreferences prefs = getSharedPreferences("prefs", MODE_PRIVATE);
+        SharedPreferences.Editor edit = prefs.edit();
+        edit.putString("text", null);
+        edit.putString("imageDataPath", null);
+        edit.apply();
     }
 
     /**
@@ -134,38 +137,124 @@ public class CameraActivity extends AppCompatActivity {
         cameraKitView.captureImage(new CameraKitView.ImageCallback() {
             @Override
             public void onImage(CameraKitView cameraKitView, final byte[] photo) {
+                showResult(photo, deviceOrientation.getRotation());
+            }
+        });
 
-                Bitmap bitmapImage = BitmapFactory.decodeByteArray(photo, 0, photo.length, null);
-                //Image rotation
-
-                if(orientationResult != null)
-                {
-                    switch (orientationResult)
-                    {
-                        case "LR": bitmapImage=rotateImage(bitmapImage,90); break;
-                        case "LL": bitmapImage=rotateImage(bitmapImage,270); break;
-                        case "PU": bitmapImage=rotateImage(bitmapImage,180); break;
-                        default: break;
-                    }
-
-                    //Temporary stores the captured photo into a file that will be used from the Camera Result activity
-                    String filePath= tempFileImage(CameraActivity.this, bitmapImage,"capturedImage");
+    }
 
-                    SharedPreferences prefs = getSharedPreferences("prefs", MODE_PRIVATE);
-                    SharedPreferences.Editor edit = prefs.edit();
-                    edit.putString("imagePath", filePath.trim());
-                    edit.apply();
+    /**
+     * Takes BURST_SIZE photos one after the other and analyses only the best one (see BurstSelector).
+     * Each photo is scored in background while the next one is captured
+     *
+     * @modify SharedPreferences
+     */
+    private void takeBurst() {
+        //the batched readings would give the motion of up to a fraction of a second before each photo
+        deviceOrientation.setLowLatency(true);
+        //reset by the last photo, or by the timeout if the camera doesn't deliver it
+        burstHandler.removeCallbacks(endLowLatency);
+        burstHandler.postDelayed(endLowLatency, BURST_TIMEOUT_MS);
+        captureBurstPhoto(new BurstSelector<byte[]>(), deviceOrientation.getRotation(), BURST_SIZE);
+    }
 
-                    //An intent that will launch the activity that will analyse the photo
-                    Intent i = new Intent(CameraActivity.this, ResultActivity.class);
-                    startActivity(i);
+    /**
+     * @param selector selector of the best photo of the burst
+     * @param rotation rotation of the photos, the one at the start of the burst
+     * @param remaining number of photos still to capture, this one included
+     */
+    private void captureBurstPhoto(final BurstSelector<byte[]> selector, final int rotation, final int remaining) {
+        //motion of the phone when the photo is taken, read before the camera spends time encoding the JPEG
+        final float motion = motionMeter.getMotion();
+        cameraKitView.captureImage(new CameraKitView.ImageCallback() {
+            @Override
+            public void onImage(CameraKitView cameraKitView, final byte[] photo) {
+                if(isDestroyed()) {
+                    return;
+                }
+                if(remaining > 1) {
+                    captureBurstPhoto(selector, rotation, remaining - 1);
+                } else {
+                    burstHandler.removeCallbacks(endLowLatency);
+                    deviceOrientation.setLowLatency(false);
                 }
+
+                burstScorer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        selector.add(photo, getSharpness(photo), motion);
+                        if(selector.size() == BURST_SIZE) {
+                            final byte[] best = selector.getBest();
+                            runOnUiThread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    showResult(best, rotation);
+                                }
+                            });
+                        }
+                    }
+                });
             }
         });
+    }
 
+    /**
+     * @param photo JPEG of the camera
+     * @return sharpness of the photo decoded at low resolution, 0 if it can't be decoded
+     */
+    private static double getSharpness(byte[] photo) {
+        Bitmap bitmap = CapturedImage.decodeSubsampled(photo, BurstSelector.SCORE_WIDTH);
+        if(bitmap == null) {
+            return 0;
+        }
+        LuminanceImage image = LuminanceImage.fromBitmap(bitmap, BurstSelector.SCORE_WIDTH);
+        bitmap.recycle();
+        return image == null ? 0 : ImageQualityAnalyzer.analyze(image, false).getSharpness();
     }
 
+    /**
+     * Hands the photo to the activity that will analyse it and saves it inside internal storage
+     * @param photo JPEG of the camera
+     * @param rotation clockwise rotation in degrees needed to show the photo upright
+     */
+    private void showResult(byte[] photo, int rotation) {
+        //rotation recorded with the photo, the photo isn't decoded here
+        final FrameStore.Frame frame = new FrameStore.Frame(photo, rotation);
+
+        //the photo is handed to the activity that will analyse it by reference, with the reference of put(),
+        //a second reference is kept until the file is written
+        final int frameId = FrameStore.put(frame);
+        FrameStore.acquire(frameId);
+        //each photo has its own file, so that the activity never reads the previous photo in its place
+        final File imageFile = new File(getCacheDir(), "capturedImage_" + System.currentTimeMillis() + ".jpg");
+        Intent i = new Intent(CameraActivity.this, ResultActivity.class);
+        i.putExtra(ResultActivity.EXTRA_FRAME_ID, frameId);
+        i.putExtra(ResultActivity.EXTRA_IMAGE_PATH, imageFile.getAbsolutePath());
+        startActivity(i);
+
+        //the file is written in background, used only if the process is recreated
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                //Temporary stores the captured photo into a file that will be used from the Camera Result activity
+                String filePath = tempFileImage(CameraActivity.this, frame.getJpeg(), frame.getRotation(), imageFile);
+                FrameStore.release(frameId);
+                if(filePath == null) {
+                    return;
+                }
 
+                SharedPreferences prefs = getSharedPreferences("prefs", MODE_PRIVATE);
+                String previousPath = prefs.getString("imagePath", null);
+                SharedPreferences.Editor edit = prefs.edit();
+                edit.putString("imagePath", filePath.trim());
+                edit.commit();
+                //only the last photo is kept
+                if(previousPath != null && !previousPath.equals(filePath) && !new File(previousPath).delete()) {
+                    Log.w("CameraActivity", "Error deleting " + previousPath);
+                }
+            }
+        }).start();
+    }
 
     @Override
     protected void onStart() {
@@ -177,20 +266,65 @@ public class CameraActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         cameraKitView.onResume();
+
+        //the readings are recorded to tune the orientation on the JVM, see SensorTraceReplay
+        SharedPreferences prefs = getSharedPreferences("prefs", MODE_PRIVATE);
+        sensorTrace = prefs.getBoolean(PREF_RECORD_SENSOR_TRACE, false) ? new SensorTrace() : null;
+        deviceOrientation.setTrace(sensorTrace);
+        deviceOrientation.start();
     }
 
     @Override
     protected void onPause() {
+        //stop() also ends the low latency of a burst in progress
+        burstHandler.removeCallbacks(endLowLatency);
+        deviceOrientation.stop();
+        if (sensorTrace != null) {
+            saveSensorTrace(sensorTrace);
+            sensorTrace = null;
+        }
         cameraKitView.onPause();
         super.onPause();
     }
 
+    /**
+     * Writes in background the readings of the sensors to a new file in the external files directory,
+     * Android/data/unipd.se18.ocrcamera/files/sensor_trace_<time>.trace on the shared storage,
+     * to be copied with adb pull and replayed on the JVM with SensorTrace.read() and SensorTraceReplay
+     * @param trace the readings, no more recorded
+     */
+    private void saveSensorTrace(final SensorTrace trace) {
+        final File file = new File(getExternalFilesDir(null), "sensor_trace_" + System.currentTimeMillis() + ".trace");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FileOutputStream stream = new FileOutputStream(file);
+                    try {
+                        trace.write(stream);
+                    } finally {
+                        stream.close();
+                    }
+                    Log.i("CameraActivity", trace.size() + " sensor readings written to " + file.getPath());
+                } catch (IOException e) {
+                    Log.e("CameraActivity", "Error writing " + file.getPath(), e);
+                }
+            }
+        }).start();
+    }
+
     @Override
     protected void onStop() {
         cameraKitView.onStop();
         super.onStop();
     }
 
+    @Override
+    protected void onDestroy() {
+        burstScorer.shutdownNow();
+        super.onDestroy();
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
@@ -200,47 +334,34 @@ public class CameraActivity extends AppCompatActivity {
 
     /**
      * Stores the captured image into a temporary file useful to pass large data between activities
-     * and returns the file's path.
+     * and returns the file's path. The JPEG of the camera is written as it is, without recompressing it.
+     * The image is written aside and then renamed, so the file exists only once completely written
      * @param context The reference of the current activity
-     * @param bitmap The captured image to store into the file. Not null or empty.
-     * @param name The name of the file. Not null or empty.
-     * @return The files path
+     * @param jpeg The captured image to store into the file. Not null or empty.
+     * @param rotation Clockwise rotation in degrees needed to show the image upright, recorded in its EXIF
+     * @param imageFile The file to write.
+     * @return The files path, null if the file can't be written
      * @author Leonardo Rossi
      */
-    private String tempFileImage(Context context, Bitmap bitmap, String name)
+    private String tempFileImage(Context context, byte[] jpeg, int rotation, File imageFile)
     {
+        File partialFile = new File(imageFile.getPath() + ".part");
 
-        File outputDir = context.getCacheDir();
-        File imageFile = new File(outputDir, name + ".jpg");
-
-        OutputStream os;
         try {
-            os = new FileOutputStream(imageFile);
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, os);
-            os.flush();
-            os.close();
+            CapturedImage.save(partialFile, jpeg, rotation);
+            if (!partialFile.renameTo(imageFile)) {
+                throw new IOException("Error renaming " + partialFile.getPath());
+            }
         } catch (Exception e) {
             Log.e(context.getClass().getSimpleName(), "Error writing file", e);
+            partialFile.delete();
+            return null;
         }
 
         return imageFile.getAbsolutePath();
     }
 
 
-    /**
-     * Rotate the bitmap image of the angle
-     * @param source the image
-     * @param angle angle of rotation
-     * @return Bitmap image rotated
-     */
-    public static Bitmap rotateImage(Bitmap source, int angle) {
-        Matrix matrix = new Matrix();
-        matrix.postRotate(angle);
-        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(),
-                matrix, true);
-    }
-
-
 
 
 
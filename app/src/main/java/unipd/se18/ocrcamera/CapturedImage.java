@@ -0,0 +1,160 @@
+package unipd.se18.ocrcamera;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.support.media.ExifInterface;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Photos taken by the camera, stored as the JPEG produced by the camera with the rotation
+ * recorded in the EXIF orientation: the pixels are decoded, and rotated, only when the photo is read.
+ */
+final class CapturedImage {
+
+    private static final String TAG = "CapturedImage";
+
+    private CapturedImage() {
+    }
+
+    /**
+     * Writes the photo as it is and records the rotation in its EXIF orientation,
+     * added to the orientation already set by the camera. Doesn't decode the photo
+     * @param file where to write the photo
+     * @param jpeg the JPEG produced by the camera
+     * @param rotation clockwise rotation in degrees needed to show the photo upright, multiple of 90
+     * @throws IOException if the photo can't be written
+     */
+    static void save(File file, byte[] jpeg, int rotation) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(jpeg);
+        } finally {
+            stream.close();
+        }
+
+        ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+        int cameraOrientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        int orientation = toExifOrientation(toRotation(cameraOrientation) + rotation);
+        if(orientation != cameraOrientation) {
+            //rewrites only the metadata, the compressed pixels are copied as they are
+            exif.setAttribute(ExifInterface.TAG_ORIENTATION, Integer.toString(orientation));
+            exif.saveAttributes();
+        }
+    }
+
+    /**
+     * @param path path of the photo
+     * @param reqWidth width needed, the photo is subsampled as long as it stays at least this wide, 0 for the full photo
+     * @return the photo upright as given by its EXIF orientation, null if it can't be decoded
+     */
+    static Bitmap load(String path, int reqWidth) {
+        Bitmap bitmap = reqWidth > 0 ? Utils.loadBitmapFromFile(path, reqWidth) : BitmapFactory.decodeFile(path);
+        if(bitmap == null) {
+            return null;
+        }
+
+        int rotation = 0;
+        try {
+            rotation = toRotation(new ExifInterface(path).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL));
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading the orientation of " + path);
+        }
+        return rotate(bitmap, rotation);
+    }
+
+    /**
+     * @param frame frame captured by the camera
+     * @return the frame decoded upright, null if it can't be decoded
+     */
+    static Bitmap decode(FrameStore.Frame frame) {
+        byte[] jpeg = frame.getJpeg();
+        Bitmap bitmap = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        if(bitmap == null) {
+            return null;
+        }
+        //the rotation of the frame is added to the orientation set by the camera, as in save()
+        int cameraRotation = 0;
+        try {
+            cameraRotation = toRotation(new ExifInterface(new ByteArrayInputStream(jpeg))
+                    .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL));
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading the orientation of the frame");
+        }
+        return rotate(bitmap, cameraRotation + frame.getRotation());
+    }
+
+    /**
+     * @param jpeg a JPEG
+     * @param reqWidth width needed, the image is subsampled as long as it stays at least this wide
+     * @return the image subsampled, not rotated, null if it can't be decoded
+     */
+    static Bitmap decodeSubsampled(byte[] jpeg, int reqWidth) {
+        //read only the size of the image
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+
+        options.inSampleSize = Utils.calculateInSampleSize(options.outWidth, reqWidth);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    }
+
+    /**
+     * @param bitmap the bitmap, recycled if rotated
+     * @param rotation clockwise rotation in degrees, multiple of 90
+     * @return the bitmap rotated
+     */
+    private static Bitmap rotate(Bitmap bitmap, int rotation) {
+        if(rotation % 360 == 0) {
+            return bitmap;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotation);
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if(rotated != bitmap) {
+            bitmap.recycle();
+        }
+        return rotated;
+    }
+
+    /**
+     * @param orientation EXIF orientation, the mirrored ones are handled as not mirrored
+     * @return clockwise rotation in degrees needed to show the photo upright
+     */
+    static int toRotation(int orientation) {
+        switch(orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param rotation clockwise rotation in degrees, multiple of 90, even negative or greater than 360
+     * @return the EXIF orientation of a photo to rotate by rotation degrees
+     */
+    static int toExifOrientation(int rotation) {
+        switch(((rotation % 360) + 360) % 360) {
+            case 90: return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180: return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270: return ExifInterface.ORIENTATION_ROTATE_270;
+            default: return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+}
@@ -4,105 +4,158 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.support.media.ExifInterface;
+import android.util.Log;
 
 /**
- * This class use the gyroscope to get the camera orientation
+ * This class uses the accelerometer to get the orientation of the phone (see OrientationFilter),
+ * and gives the readings to a MotionMeter.
+ * The sensor must be listened only while the activity is visible: start() in onResume(),
+ * stop() in onPause(). The readings can be batched by the sensor, so the CPU wakes up less often,
+ * except while the motion must be current, e.g. during a burst of photos (see setLowLatency()).
+ * The readings can also be recorded in a SensorTrace, to replay them on the JVM (see SensorTraceReplay).
  * @author Giovanni Furlan (g2)
  *
  */
-public class DeviceOrientation {
-    private final int ORIENTATION_PORTRAIT = ExifInterface.ORIENTATION_ROTATE_90; // 6
-    private final int ORIENTATION_LANDSCAPE_REVERSE = ExifInterface.ORIENTATION_ROTATE_180; // 3
-    private final int ORIENTATION_LANDSCAPE = ExifInterface.ORIENTATION_NORMAL; // 1
-    private final int ORIENTATION_PORTRAIT_REVERSE = ExifInterface.ORIENTATION_ROTATE_270; // 8
-
-    private int smoothness = 1;
-    private float averagePitch = 0;
-    private float averageRoll = 0;
-    private int orientation = ORIENTATION_PORTRAIT;
-
-    private float[] pitches;
-    private float[] rolls;
-
-    DeviceOrientation() {
-        pitches = new float[smoothness];
-        rolls = new float[smoothness];
-    }
+class DeviceOrientation implements SensorEventListener {
+
+    private static final String TAG = "DeviceOrientation";
+
+    //number of readings averaged
+    private static final int SMOOTHNESS = 5;
 
-    SensorEventListener getEventListener() {
-        return sensorEventListener;
+    //degrees past the boundary between two orientations needed to change orientation
+    private static final int HYSTERESIS = 10;
+
+    //maximum delay of the readings kept by the sensor before waking up the CPU, in microseconds:
+    //fine for the orientation, not for the motion at the time of a photo
+    private static final int MAX_REPORT_LATENCY_US = 200000;
+
+    /**
+     * Listener of the changes of the orientation
+     */
+    interface Listener {
+        /**
+         * Called on the main thread
+         * @param rotation clockwise rotation in degrees needed to show upright a photo taken now
+         */
+        void onRotationChanged(int rotation);
     }
 
-    public int getOrientation() {
-        return orientation;
+    private final SensorManager sensorManager;
+    private final Sensor accelerometer;
+    private final Sensor magnetometer;
+    private final OrientationFilter filter = new OrientationFilter(SMOOTHNESS, HYSTERESIS);
+    private final MotionMeter motionMeter;
+    private final Listener listener;
+
+    private volatile int rotation = OrientationFilter.ROTATION_UNKNOWN;
+
+    //trace recording the readings, null if they are not recorded
+    private volatile SensorTrace trace = null;
+
+    //true while listening to the sensors
+    private boolean started = false;
+
+    //true if each reading must be delivered as soon as it is taken, without batching
+    private boolean lowLatency = false;
+
+    /**
+     * @param sensorManager manager of the sensors of the phone
+     * @param motionMeter meter receiving the readings, null if the motion is not needed
+     * @param listener listener of the changes of the orientation
+     */
+    DeviceOrientation(SensorManager sensorManager, MotionMeter motionMeter, Listener listener) {
+        this.sensorManager = sensorManager;
+        this.accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        this.magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        this.motionMeter = motionMeter;
+        this.listener = listener;
     }
 
-    private SensorEventListener sensorEventListener = new SensorEventListener() {
-        float[] mGravity;
-        float[] mGeomagnetic;
-
-        @Override
-        public void onSensorChanged(SensorEvent event) {
-            if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER)
-                mGravity = event.values;
-            if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD)
-                mGeomagnetic = event.values;
-            if (mGravity != null && mGeomagnetic != null) {
-                float R[] = new float[9];
-                float I[] = new float[9];
-                boolean success = SensorManager.getRotationMatrix(R, I, mGravity, mGeomagnetic);
-                if (success) {
-                    float orientationData[] = new float[3];
-                    SensorManager.getOrientation(R, orientationData);
-                    averagePitch = addValue(orientationData[1], pitches);
-                    averageRoll = addValue(orientationData[2], rolls);
-                    orientation = calculateOrientation();
-                }
-            }
+    /**
+     * Starts listening to the accelerometer, to call in onResume()
+     */
+    synchronized void start() {
+        if (accelerometer == null) {
+            Log.e(TAG, "No accelerometer");
+            return;
+        }
+        int latency = lowLatency ? 0 : MAX_REPORT_LATENCY_US;
+        sensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_UI, latency);
+        //the magnetic field isn't used by the orientation, it's listened only to be recorded
+        if (trace != null && magnetometer != null) {
+            sensorManager.registerListener(this, magnetometer, SensorManager.SENSOR_DELAY_UI, latency);
         }
+        started = true;
+    }
 
-        @Override
-        public void onAccuracyChanged(Sensor sensor, int accuracy) {
-            // TODO Auto-generated method stub
+    /**
+     * Stops listening to the accelerometer, to call in onPause()
+     */
+    synchronized void stop() {
+        sensorManager.unregisterListener(this);
+        started = false;
+        lowLatency = false;
+    }
 
+    /**
+     * Delivers the readings as soon as they are taken, so that the MotionMeter is current when a photo
+     * is taken, or batches them again. Reset by stop()
+     * @param lowLatency true to stop batching the readings, false to batch them again
+     */
+    synchronized void setLowLatency(boolean lowLatency) {
+        if (this.lowLatency == lowLatency) {
+            return;
+        }
+        boolean wasStarted = started;
+        if (wasStarted) {
+            sensorManager.unregisterListener(this);
         }
-    };
-
-    private float addValue(float value, float[] values) {
-        value = (float) Math.round((Math.toDegrees(value)));
-        float average = 0;
-        for (int i = 1; i < smoothness; i++) {
-            values[i - 1] = values[i];
-            average += values[i];
+        this.lowLatency = lowLatency;
+        if (wasStarted) {
+            start();
         }
-        values[smoothness - 1] = value;
-        average = (average + value) / smoothness;
-        return average;
     }
 
-    private int calculateOrientation() {
-        // finding local orientation dip
-        if (((orientation == ORIENTATION_PORTRAIT || orientation == ORIENTATION_PORTRAIT_REVERSE)
-                && (averageRoll > -30 && averageRoll < 30))) {
-            if (averagePitch > 0)
-                return ORIENTATION_PORTRAIT_REVERSE;
-            else
-                return ORIENTATION_PORTRAIT;
-        } else {
-            // divides between all orientations
-            if (Math.abs(averagePitch) >= 30) {
-                if (averagePitch > 0)
-                    return ORIENTATION_PORTRAIT_REVERSE;
-                else
-                    return ORIENTATION_PORTRAIT;
-            } else {
-                if (averageRoll > 0) {
-                    return ORIENTATION_LANDSCAPE_REVERSE;
-                } else {
-                    return ORIENTATION_LANDSCAPE;
-                }
-            }
+    /**
+     * Records the readings of the accelerometer and of the magnetic field, from the next call to start()
+     * @param trace trace where the readings are added, null to stop recording
+     */
+    void setTrace(SensorTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @return clockwise rotation in degrees needed to show upright a photo taken now, 0 if unknown
+     */
+    int getRotation() {
+        int rotation = this.rotation;
+        return rotation == OrientationFilter.ROTATION_UNKNOWN ? 0 : rotation;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] values = event.values;
+        int type = event.sensor.getType();
+        SensorTrace trace = this.trace;
+        if (trace != null) {
+            trace.add(type, event.timestamp, values[0], values[1], values[2]);
         }
+        if (type != Sensor.TYPE_ACCELEROMETER) {
+            return;
+        }
+        if (motionMeter != null) {
+            motionMeter.onAcceleration(values[0], values[1], values[2]);
+        }
+        int newRotation = filter.onAcceleration(values[0], values[1], values[2]);
+        if (newRotation != rotation) {
+            rotation = newRotation;
+            Log.d(TAG, "rotation " + newRotation);
+            listener.onRotationChanged(newRotation);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
     }
 }
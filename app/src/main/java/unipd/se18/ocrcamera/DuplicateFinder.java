@@ -0,0 +1,116 @@
+package unipd.se18.ocrcamera;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups the near-duplicate pictures of a dataset, the pictures whose perceptual hashes
+ * (see PerceptualHash) differ in few bits: usually shots of the same label taken one after the other.
+ * Two pictures are in the same cluster if there is a chain of near-duplicates linking them.
+ * The neighbours of each picture are found through a HammingBkTree, so the pictures are not
+ * compared in pairs.
+ */
+final class DuplicateFinder {
+
+    /**
+     * Maximum number of different bits between the hashes of two near-duplicates
+     */
+    static final int DEFAULT_MAX_DISTANCE = 6;
+
+    private DuplicateFinder() {
+    }
+
+    /**
+     * @param hashes perceptual hash of each picture
+     * @param maxDistance maximum number of different bits between two near-duplicates
+     * @return the clusters of at least two pictures, each as the increasing positions of its pictures
+     * in hashes, ordered by their first picture
+     */
+    static List<int[]> findClusters(long[] hashes, int maxDistance) {
+        HammingBkTree tree = new HammingBkTree();
+        for(int i = 0; i < hashes.length; i++) {
+            tree.add(hashes[i], i);
+        }
+
+        //union-find of the clusters, each picture is linked to its near-duplicates
+        int[] parents = new int[hashes.length];
+        for(int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for(int i = 0; i < hashes.length; i++) {
+            for(int neighbour : tree.search(hashes[i], maxDistance)) {
+                union(parents, i, neighbour);
+            }
+        }
+
+        //the root of each cluster is its first picture, so the clusters come out in order
+        int[] sizes = new int[hashes.length];
+        for(int i = 0; i < hashes.length; i++) {
+            sizes[find(parents, i)]++;
+        }
+        int[][] members = new int[hashes.length][];
+        int[] filled = new int[hashes.length];
+        List<int[]> clusters = new ArrayList<>();
+        for(int i = 0; i < hashes.length; i++) {
+            int root = find(parents, i);
+            if(sizes[root] < 2) {
+                continue;
+            }
+            if(members[root] == null) {
+                members[root] = new int[sizes[root]];
+                clusters.add(members[root]);
+            }
+            members[root][filled[root]++] = i;
+        }
+        return clusters;
+    }
+
+    /**
+     * @param count number of pictures
+     * @param clusters clusters returned by findClusters()
+     * @return the positions of the pictures to keep: the first picture of each cluster and the
+     * pictures without duplicates, in increasing order
+     */
+    static int[] representatives(int count, List<int[]> clusters) {
+        boolean[] duplicate = new boolean[count];
+        int duplicates = 0;
+        for(int[] cluster : clusters) {
+            for(int i = 1; i < cluster.length; i++) {
+                duplicate[cluster[i]] = true;
+                duplicates++;
+            }
+        }
+        int[] kept = new int[count - duplicates];
+        int k = 0;
+        for(int i = 0; i < count; i++) {
+            if(!duplicate[i]) {
+                kept[k++] = i;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return the root of the cluster of the picture, halving the path to it
+     */
+    private static int find(int[] parents, int i) {
+        while(parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    /**
+     * Merges two clusters, the smallest root stays the root
+     */
+    private static void union(int[] parents, int i, int j) {
+        int rootI = find(parents, i);
+        int rootJ = find(parents, j);
+        if(rootI < rootJ) {
+            parents[rootJ] = rootI;
+        } else if(rootJ < rootI) {
+            parents[rootI] = rootJ;
+        }
+    }
+}
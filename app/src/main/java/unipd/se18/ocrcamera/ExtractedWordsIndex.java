@@ -0,0 +1,264 @@
+package unipd.se18.ocrcamera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Index of the words extracted by the OCR from a text, built once per text, that returns for a word
+ * only the extracted words that can be similar to it or contain it.
+ * The words are indexed by length and by the pairs of consecutive characters (bigrams) they contain,
+ * after replacing each character with its canonical one (see WordSimilarity.canonical()).
+ * The words can be changed after the creation of the index: the new content is indexed again and
+ * the old entries are left in place, at worst they return some more candidates.
+ */
+class ExtractedWordsIndex {
+
+    private final String[] words;
+
+    /**
+     * Words containing each bigram, the bigram is encoded as (first char << 16) | second char
+     */
+    private final HashMap<Integer, IntList> postings = new HashMap<>();
+
+    /**
+     * Words of each length, indexed by length
+     */
+    private final ArrayList<IntList> lengthBuckets = new ArrayList<>();
+
+    //per word counters used while looking for candidates, reset after each search
+    private final int[] sharedBigrams;
+    private final int[] candidateMarks;
+    private int searchId = 0;
+
+    /**
+     * @param words words extracted, changes must be done only through set()
+     */
+    ExtractedWordsIndex(String[] words) {
+        this.words = words;
+        this.sharedBigrams = new int[words.length];
+        this.candidateMarks = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            add(i);
+        }
+    }
+
+    /**
+     * @return number of words
+     */
+    int size() {
+        return words.length;
+    }
+
+    /**
+     * @param index position of the word
+     * @return the current content of the word
+     */
+    String get(int index) {
+        return words[index];
+    }
+
+    /**
+     * Changes a word and indexes its new content
+     * @param index position of the word
+     * @param word new content
+     */
+    void set(int index, String word) {
+        words[index] = word;
+        add(index);
+    }
+
+    /**
+     * @param word word to compare
+     * @param start position from where the search starts, wrapping around the end
+     * @param minSimilarity minimum similarity, between 0 and 1
+     * @return the positions of the words that can have a similarity with word greater than minSimilarity
+     * (see WordSimilarity.similarity()), ordered as visited starting from start
+     */
+    int[] similarCandidates(String word, int start, double minSimilarity) {
+        int length = word.length();
+        int[] wordBigrams = distinctBigrams(word);
+        nextSearch();
+
+        // count how many bigrams of the word each extracted word contains
+        IntList touched = countSharedBigrams(wordBigrams);
+
+        IntList candidates = new IntList();
+        for (int i = 0; i < touched.size; i++) {
+            int index = touched.values[i];
+            if (isSimilarCandidate(length, wordBigrams.length, index, minSimilarity)) {
+                candidates.add(index);
+            }
+        }
+
+        // the words of a length where the bigrams can't prune must be checked even if they share nothing
+        for (int otherLength = 0; otherLength < lengthBuckets.size(); otherLength++) {
+            if (!WordSimilarity.lengthsCompatible(length, otherLength, minSimilarity)
+                    || requiredBigrams(length, otherLength, wordBigrams.length, minSimilarity) > 0) {
+                continue;
+            }
+            IntList bucket = lengthBuckets.get(otherLength);
+            for (int i = 0; i < bucket.size; i++) {
+                int index = bucket.values[i];
+                if (sharedBigrams[index] == 0 && candidateMarks[index] != searchId
+                        && words[index].length() == otherLength) {
+                    candidateMarks[index] = searchId;
+                    candidates.add(index);
+                }
+            }
+        }
+
+        resetCounters(touched);
+        return sortFrom(candidates, start);
+    }
+
+    /**
+     * @param word word to look for, at least 2 characters
+     * @param start position from where the search starts, wrapping around the end
+     * @return the positions of the words that can contain word, ordered as visited starting from start
+     */
+    int[] containingCandidates(String word, int start) {
+        int[] wordBigrams = distinctBigrams(word);
+        nextSearch();
+        IntList touched = countSharedBigrams(wordBigrams);
+
+        // a word containing the searched one contains all its bigrams
+        IntList candidates = new IntList();
+        for (int i = 0; i < touched.size; i++) {
+            int index = touched.values[i];
+            if (sharedBigrams[index] >= wordBigrams.length && words[index].length() >= word.length()) {
+                candidates.add(index);
+            }
+        }
+
+        resetCounters(touched);
+        return sortFrom(candidates, start);
+    }
+
+    /**
+     * @return true if the word at index, given the bigrams it shares with the searched word, can be similar to it
+     */
+    private boolean isSimilarCandidate(int length, int distinctBigrams, int index, double minSimilarity) {
+        int otherLength = words[index].length();
+        if (candidateMarks[index] == searchId || !WordSimilarity.lengthsCompatible(length, otherLength, minSimilarity)) {
+            return false;
+        }
+        if (sharedBigrams[index] >= requiredBigrams(length, otherLength, distinctBigrams, minSimilarity)) {
+            candidateMarks[index] = searchId;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Each edit changes at most two bigrams, so a word similar to the searched one must share at least
+     * its distinct bigrams minus two for each edit allowed
+     * @return the minimum number of distinct bigrams shared by two similar words with these lengths
+     */
+    private static int requiredBigrams(int length, int otherLength, int distinctBigrams, double minSimilarity) {
+        int maxEdits = WordSimilarity.maxEdits(Math.max(length, otherLength), minSimilarity);
+        return distinctBigrams - 2 * maxEdits;
+    }
+
+    /**
+     * @return the words sharing at least one bigram, with sharedBigrams updated
+     */
+    private IntList countSharedBigrams(int[] wordBigrams) {
+        IntList touched = new IntList();
+        for (int bigram : wordBigrams) {
+            IntList posting = postings.get(bigram);
+            if (posting == null) {
+                continue;
+            }
+            for (int i = 0; i < posting.size; i++) {
+                int index = posting.values[i];
+                if (sharedBigrams[index]++ == 0) {
+                    touched.add(index);
+                }
+            }
+        }
+        return touched;
+    }
+
+    private void resetCounters(IntList touched) {
+        for (int i = 0; i < touched.size; i++) {
+            sharedBigrams[touched.values[i]] = 0;
+        }
+    }
+
+    private void nextSearch() {
+        searchId++;
+    }
+
+    /**
+     * @return the positions ordered by distance from start, moving forward and wrapping around the end
+     */
+    private int[] sortFrom(IntList positions, int start) {
+        int[] offsets = new int[positions.size];
+        for (int i = 0; i < positions.size; i++) {
+            offsets[i] = (positions.values[i] - start + words.length) % words.length;
+        }
+        Arrays.sort(offsets);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = (start + offsets[i]) % words.length;
+        }
+        return offsets;
+    }
+
+    /**
+     * Indexes the current content of a word
+     */
+    private void add(int index) {
+        String word = words[index];
+        while (lengthBuckets.size() <= word.length()) {
+            lengthBuckets.add(new IntList());
+        }
+        lengthBuckets.get(word.length()).add(index);
+
+        for (int bigram : distinctBigrams(word)) {
+            IntList posting = postings.get(bigram);
+            if (posting == null) {
+                posting = new IntList();
+                postings.put(bigram, posting);
+            }
+            posting.add(index);
+        }
+    }
+
+    /**
+     * @return the distinct canonical bigrams of the word, encoded as (first char << 16) | second char
+     */
+    private static int[] distinctBigrams(String word) {
+        if (word.length() < 2) {
+            return new int[0];
+        }
+        int[] bigrams = new int[word.length() - 1];
+        for (int i = 0; i < bigrams.length; i++) {
+            bigrams[i] = (WordSimilarity.canonical(word.charAt(i)) << 16) | WordSimilarity.canonical(word.charAt(i + 1));
+        }
+        Arrays.sort(bigrams);
+
+        int distinct = 0;
+        for (int i = 0; i < bigrams.length; i++) {
+            if (i == 0 || bigrams[i] != bigrams[i - 1]) {
+                bigrams[distinct++] = bigrams[i];
+            }
+        }
+        return Arrays.copyOf(bigrams, distinct);
+    }
+
+    /**
+     * Growable list of int, avoids boxing
+     */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package unipd.se18.ocrcamera;
+
+import java.util.HashMap;
+
+/**
+ * Process-wide store of the frames captured by the camera, used to hand a frame to the next
+ * activity by reference instead of writing and reading it from a file.
+ * Each frame is reference counted: put() gives the first reference to the caller, who usually hands
+ * it over with the id of the frame, every acquire() adds a reference and every release() removes one.
+ * The frame is dropped when no reference is left. Each reference is released exactly once by its owner:
+ * who receives an id owns the reference handed over, reads the frame with get() and releases it when done;
+ * who needs the frame meanwhile calls acquire() and releases its own reference.
+ * The store is empty when the process is recreated, so who receives an id must be ready to find nothing.
+ */
+final class FrameStore {
+
+    private static final HashMap<Integer, Entry> frames = new HashMap<>();
+    private static int nextId = 0;
+
+    private FrameStore() {
+    }
+
+    /**
+     * @param frame the frame, never changed after this call
+     * @return id of the frame, with one reference owned by the caller
+     */
+    static synchronized int put(Frame frame) {
+        int id = nextId++;
+        frames.put(id, new Entry(frame));
+        return id;
+    }
+
+    /**
+     * @param id id of the frame, with a reference owned by the caller
+     * @return the frame, without adding a reference, null if it has been dropped
+     */
+    static synchronized Frame get(int id) {
+        Entry entry = frames.get(id);
+        return entry == null ? null : entry.frame;
+    }
+
+    /**
+     * @param id id of the frame
+     * @return the frame with one more reference, null if it has been dropped
+     */
+    static synchronized Frame acquire(int id) {
+        Entry entry = frames.get(id);
+        if(entry == null) {
+            return null;
+        }
+        entry.references++;
+        return entry.frame;
+    }
+
+    /**
+     * Removes a reference, the frame is dropped when no reference is left
+     * @param id id of the frame
+     */
+    static synchronized void release(int id) {
+        Entry entry = frames.get(id);
+        if(entry != null && --entry.references == 0) {
+            frames.remove(id);
+        }
+    }
+
+    /**
+     * @return number of frames stored
+     */
+    static synchronized int size() {
+        return frames.size();
+    }
+
+    /**
+     * Frame captured by the camera: the JPEG as produced by the camera and the rotation to show it upright
+     */
+    static class Frame {
+        private final byte[] jpeg;
+        private final int rotation;
+
+        /**
+         * @param jpeg the JPEG of the camera, must not be changed
+         * @param rotation clockwise rotation in degrees needed to show the frame upright
+         */
+        Frame(byte[] jpeg, int rotation) {
+            this.jpeg = jpeg;
+            this.rotation = rotation;
+        }
+
+        byte[] getJpeg() {
+            return jpeg;
+        }
+
+        int getRotation() {
+            return rotation;
+        }
+    }
+
+    private static class Entry {
+        private final Frame frame;
+        private int references = 1;
+
+        Entry(Frame frame) {
+            this.frame = frame;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package unipd.se18.ocrcamera;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BK-tree of 64-bit hashes compared by Hamming distance (see PerceptualHash.distance()), returning
+ * the hashes within a distance of a given one without comparing it with all the others.
+ * Each child of a node holds the hashes at a given distance from the node, so by the triangle
+ * inequality a search within radius r visits only the children at distance d - r ... d + r.
+ */
+class HammingBkTree {
+
+    private Node root = null;
+    private int size = 0;
+
+    /**
+     * @param hash the hash
+     * @param id id returned by the searches, usually the position of the hashed item
+     */
+    void add(long hash, int id) {
+        size++;
+        if(root == null) {
+            root = new Node(hash, id);
+            return;
+        }
+        Node node = root;
+        while(true) {
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if(distance == 0) {
+                node.ids.add(id);
+                return;
+            }
+            Node child = node.children[distance];
+            if(child == null) {
+                node.children[distance] = new Node(hash, id);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * @param hash hash to look for
+     * @param maxDistance maximum number of different bits
+     * @return the ids of the hashes within maxDistance from hash, hash included if added
+     */
+    List<Integer> search(long hash, int maxDistance) {
+        List<Integer> result = new ArrayList<>();
+        if(root == null) {
+            return result;
+        }
+        ArrayDeque<Node> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+        while(!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if(distance <= maxDistance) {
+                result.addAll(node.ids);
+            }
+            int from = Math.max(1, distance - maxDistance);
+            int to = Math.min(Long.SIZE, distance + maxDistance);
+            for(int d = from; d <= to; d++) {
+                if(node.children[d] != null) {
+                    toVisit.push(node.children[d]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of hashes added
+     */
+    int size() {
+        return size;
+    }
+
+    private static class Node {
+        private final long hash;
+        //ids of the items with this same hash
+        private final List<Integer> ids = new ArrayList<>(1);
+        //children by distance from this node, between 1 and 64
+        private final Node[] children = new Node[Long.SIZE + 1];
+
+        Node(long hash, int id) {
+            this.hash = hash;
+            this.ids.add(id);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Quality of a picture measured by ImageQualityAnalyzer: sharpness, exposure and glare
+ */
+class ImageQuality {
+
+    private final double sharpness;
+    private final double meanLuminance;
+    private final double highlightFraction;
+    private final double shadowFraction;
+
+    /**
+     * @param sharpness variance of the Laplacian of the sharpest tiles
+     * @param meanLuminance mean luminance between 0 and 255
+     * @param highlightFraction fraction of the pixels burnt out by the light
+     * @param shadowFraction fraction of the pixels completely dark
+     */
+    ImageQuality(double sharpness, double meanLuminance, double highlightFraction, double shadowFraction) {
+        this.sharpness = sharpness;
+        this.meanLuminance = meanLuminance;
+        this.highlightFraction = highlightFraction;
+        this.shadowFraction = shadowFraction;
+    }
+
+    /**
+     * @return variance of the Laplacian of the luminance in the sharpest tiles (90th percentile),
+     * low values mean a blurry picture: the text usually covers only a part of it
+     */
+    double getSharpness() {
+        return sharpness;
+    }
+
+    /**
+     * @return mean luminance between 0 and 255
+     */
+    double getMeanLuminance() {
+        return meanLuminance;
+    }
+
+    /**
+     * @return fraction of the pixels burnt out (almost white), caused by glare on glossy labels
+     */
+    double getHighlightFraction() {
+        return highlightFraction;
+    }
+
+    /**
+     * @return fraction of the pixels almost black
+     */
+    double getShadowFraction() {
+        return shadowFraction;
+    }
+
+    @Override
+    public String toString() {
+        return "sharpness " + Math.round(sharpness) + ", luminance " + Math.round(meanLuminance)
+                + ", highlights " + Math.round(highlightFraction * 100) + "%"
+                + ", shadows " + Math.round(shadowFraction * 100) + "%";
+    }
+}
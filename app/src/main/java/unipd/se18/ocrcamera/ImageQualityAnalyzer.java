@@ -0,0 +1,183 @@
+package unipd.se18.ocrcamera;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Measures the quality of a picture in a single pass over its downsampled luminance:
+ * blur as variance of the Laplacian, exposure as mean luminance, glare as fraction of burnt out pixels.
+ * The picture is divided into square tiles, analyzed in parallel by bands of rows.
+ */
+final class ImageQualityAnalyzer {
+
+    /**
+     * Width of the luminance plane analyzed, wider pictures are downsampled
+     */
+    static final int ANALYSIS_WIDTH = 512;
+
+    //side of the tiles in pixels of the luminance plane
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * Version of the measure, changes whenever the same picture can give a different quality
+     */
+    static final String VERSION = "laplacian-tiles-1/" + ANALYSIS_WIDTH + "/" + TILE_SIZE;
+
+    //luminance above which a pixel is burnt out, below which it's black
+    private static final int HIGHLIGHT_LUMINANCE = 250;
+    private static final int SHADOW_LUMINANCE = 5;
+
+    //percentile of the sharpness of the tiles taken as the sharpness of the picture
+    private static final double SHARP_TILES_PERCENTILE = 0.9;
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(CORES, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ImageQualityAnalyzer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private ImageQualityAnalyzer() {
+    }
+
+    /**
+     * @param bitmap the picture
+     * @return quality of the picture, null if the picture can't be read
+     */
+    static ImageQuality analyze(Bitmap bitmap) {
+        LuminanceImage image = LuminanceImage.fromBitmap(bitmap, ANALYSIS_WIDTH);
+        return image == null ? null : analyze(image, true);
+    }
+
+    /**
+     * @param image luminance of the picture
+     * @param parallel true to analyze the bands of tiles on all the cores
+     * @return quality of the picture
+     */
+    static ImageQuality analyze(final LuminanceImage image, boolean parallel) {
+        int tilesX = (image.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (image.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+        final TileStats[] tiles = new TileStats[tilesX * tilesY];
+
+        int bands = parallel ? Math.min(CORES, tilesY) : 1;
+        if(bands <= 1) {
+            analyzeTileRows(image, tiles, 0, tilesY);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>(bands);
+            for(int band = 0; band < bands; band++) {
+                final int firstRow = tilesY * band / bands;
+                final int lastRow = tilesY * (band + 1) / bands;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        analyzeTileRows(image, tiles, firstRow, lastRow);
+                        return null;
+                    }
+                });
+            }
+            try {
+                for(Future<Void> result : POOL.invokeAll(tasks)) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Analysis interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Analysis failed", e.getCause());
+            }
+        }
+        return combine(tiles, image.getWidth() * image.getHeight());
+    }
+
+    /**
+     * Analyzes the tiles in the rows of tiles [firstRow, lastRow)
+     */
+    private static void analyzeTileRows(LuminanceImage image, TileStats[] tiles, int firstRow, int lastRow) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+
+        for(int tileY = firstRow; tileY < lastRow; tileY++) {
+            for(int tileX = 0; tileX < tilesX; tileX++) {
+                TileStats tile = new TileStats();
+                int endY = Math.min(height, (tileY + 1) * TILE_SIZE);
+                int endX = Math.min(width, (tileX + 1) * TILE_SIZE);
+                for(int y = tileY * TILE_SIZE; y < endY; y++) {
+                    for(int x = tileX * TILE_SIZE; x < endX; x++) {
+                        int luminance = image.get(x, y);
+                        tile.luminanceSum += luminance;
+                        if(luminance >= HIGHLIGHT_LUMINANCE) {
+                            tile.highlights++;
+                        } else if(luminance <= SHADOW_LUMINANCE) {
+                            tile.shadows++;
+                        }
+
+                        //Laplacian only where the 4 neighbours exist
+                        if(x > 0 && y > 0 && x < width - 1 && y < height - 1) {
+                            int laplacian = image.get(x - 1, y) + image.get(x + 1, y)
+                                    + image.get(x, y - 1) + image.get(x, y + 1) - 4 * luminance;
+                            tile.laplacianSum += laplacian;
+                            tile.laplacianSquaresSum += (long) laplacian * laplacian;
+                            tile.laplacianCount++;
+                        }
+                    }
+                }
+                tiles[tileY * tilesX + tileX] = tile;
+            }
+        }
+    }
+
+    private static ImageQuality combine(TileStats[] tiles, int pixels) {
+        long luminanceSum = 0;
+        long highlights = 0;
+        long shadows = 0;
+        double[] sharpness = new double[tiles.length];
+        int sharpnessCount = 0;
+        for(TileStats tile : tiles) {
+            luminanceSum += tile.luminanceSum;
+            highlights += tile.highlights;
+            shadows += tile.shadows;
+            if(tile.laplacianCount > 0) {
+                sharpness[sharpnessCount++] = tile.getLaplacianVariance();
+            }
+        }
+
+        double tileSharpness = 0;
+        if(sharpnessCount > 0) {
+            Arrays.sort(sharpness, 0, sharpnessCount);
+            tileSharpness = sharpness[(int) Math.min(sharpnessCount - 1, Math.floor(SHARP_TILES_PERCENTILE * sharpnessCount))];
+        }
+        return new ImageQuality(tileSharpness, (double) luminanceSum / pixels,
+                (double) highlights / pixels, (double) shadows / pixels);
+    }
+
+    /**
+     * Sums accumulated over a tile, in integer arithmetic
+     */
+    private static class TileStats {
+        private long luminanceSum = 0;
+        private int highlights = 0;
+        private int shadows = 0;
+        private long laplacianSum = 0;
+        private long laplacianSquaresSum = 0;
+        private int laplacianCount = 0;
+
+        private double getLaplacianVariance() {
+            double mean = (double) laplacianSum / laplacianCount;
+            return (double) laplacianSquaresSum / laplacianCount - mean * mean;
+        }
+    }
+}
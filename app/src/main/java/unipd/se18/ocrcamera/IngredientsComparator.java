@@ -0,0 +1,109 @@
+package unipd.se18.ocrcamera;
+
+import android.util.Log;
+
+import java.util.regex.Pattern;
+
+/**
+ * Compares the list of ingredients extracted by the OCR with the correct one
+ * @author Francesco Pham (g3)
+ */
+final class IngredientsComparator {
+
+    private static final String TAG = "IngredientsComparator";
+
+    //separators between words
+    private static final Pattern WORDS_SEPARATOR = Pattern.compile("[ ,-:./\\n\\r]+");
+
+    //minimum similarity for an extracted word to match a correct one
+    static final double MIN_WORD_SIMILARITY = 0.8;
+
+    private IngredientsComparator() {
+    }
+
+    /**
+     * Compare the list of ingredients extracted by OCR and the correct list of ingredients
+     * @param correct correct list of ingredients loaded from file
+     * @param extracted list of ingredients extracted by the OCR
+     * @return confidence percentage based on number of matched words, their similarity and order
+     * @author Francesco Pham credit to Stefano Romanello for Levenshtein library suggestion
+     */
+    static float compare(String correct, String extracted) {
+
+        extracted = extracted.toLowerCase();
+        String[] correctWords = WORDS_SEPARATOR.split(correct.trim());
+
+        //extracted words indexed once, so that each correct word is compared only with the plausible ones
+        ExtractedWordsIndex extractedWords = new ExtractedWordsIndex(WORDS_SEPARATOR.split(extracted.trim()));
+        int totalExtractedWords = extractedWords.size();
+
+        Log.i(TAG, "compare -> Start of comparing");
+        Log.i(TAG, "compare -> correctWords.length == " + correctWords.length + ", extractedWords.length == " + totalExtractedWords);
+
+        float points = 0;
+        int maxPoints = 0;
+        int posLastWordFound = 0;
+        int consecutiveNotFound = 0;
+
+        for (String word : correctWords) {
+            boolean found = false;
+            int index = posLastWordFound;
+            word = word.toLowerCase();
+
+            if (word.length() >= 3) {
+                maxPoints += word.length();
+                int[] candidates = extractedWords.similarCandidates(word, posLastWordFound, MIN_WORD_SIMILARITY);
+                for (int c = 0; c < candidates.length && !found; c++) {
+                    index = candidates[c];
+                    //distance from the last word found
+                    int i = (index - posLastWordFound + totalExtractedWords) % totalExtractedWords;
+
+                    //Calculate similarity, stopping as soon as it can't exceed the minimum
+                    double similarity = WordSimilarity.similarity(word, extractedWords.get(index), MIN_WORD_SIMILARITY);
+
+                    if (similarity > MIN_WORD_SIMILARITY) {
+                        if (points == 0 || i < consecutiveNotFound + 10) {
+                            points += word.length()*similarity; //assign points based on number of characters
+                        } else {
+                            points += (float) word.length()*similarity/2;
+                        }
+                        Log.d(TAG, "compare -> \"" + word + "\" ==  \"" + extractedWords.get(index) + "\" similarity="+similarity);
+                        extractedWords.set(index, ""); //remove found word
+                        found = true;
+                    }
+                }
+            }
+
+            if(!found && word.length() >= 6){
+                maxPoints += word.length();
+                int[] candidates = extractedWords.containingCandidates(word, posLastWordFound);
+                for (int c = 0; c < candidates.length && !found; c++) {
+                    index = candidates[c];
+                    //distance from the last word found
+                    int i = (index - posLastWordFound + totalExtractedWords) % totalExtractedWords;
+
+                    if (extractedWords.get(index).contains(word)) {
+                        if(points==0 || i<consecutiveNotFound+10) {
+                            points += word.length(); //assign points based on number of characters
+                        } else {
+                            points += (float)word.length()/2;
+                        }
+                        Log.d(TAG, "compare -> \"" + word + "\" contained in  \"" + extractedWords.get(index) + "\"");
+                        extractedWords.set(index, extractedWords.get(index).replace(word, "")); //remove found word
+                        found = true;
+                    }
+                }
+            }
+
+            if(found){
+                consecutiveNotFound = 0;
+                posLastWordFound = index;
+            } else {
+                consecutiveNotFound++;
+            }
+        }
+        float confidence = (points / maxPoints)*100;
+        Log.i(TAG, "compare -> confidence == " + confidence + " (%)");
+        return confidence;
+    }
+}
@@ -0,0 +1,211 @@
+package unipd.se18.ocrcamera;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Dictionary of the words of the ingredient names (INCI), used to correct the words broken by the OCR,
+ * as "glycerjn" in place of "glycerin".
+ * The words are indexed by the strings obtained deleting up to MAX_EDITS characters from them
+ * (symmetric delete, as SymSpell): a word broken by up to MAX_EDITS edits shares one of these strings
+ * with the correct word, so a lookup generates the deletions of the broken word and compares it
+ * (see WordSimilarity.similarity()) only with the few words sharing one of them.
+ * The dictionary doesn't change after its creation and can be used by many threads.
+ */
+class IngredientsDictionary {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //words of the ingredients and of the texts, the other characters are separators
+    private static final Pattern WORD = Pattern.compile("[A-Za-z]+");
+
+    /**
+     * Maximum number of characters inserted, deleted or substituted in a word that can be corrected
+     */
+    static final int MAX_EDITS = 2;
+
+    /**
+     * Minimum similarity between a word and its correction
+     */
+    static final double MIN_SIMILARITY = 0.75;
+
+    /**
+     * Words shorter than this are neither corrected nor used as corrections, too many words are close to them
+     */
+    static final int MIN_WORD_LENGTH = 4;
+
+    private final HashSet<String> words = new HashSet<>();
+
+    //words by the strings obtained deleting up to MAX_EDITS characters from them, the words themselves included
+    private final HashMap<String, List<String>> deletions = new HashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong corrections = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+
+    /**
+     * @param names names of the ingredients, as "Sodium Laureth Sulfate"
+     */
+    IngredientsDictionary(List<String> names) {
+        for(String name : names) {
+            Matcher matcher = WORD.matcher(name);
+            while(matcher.find()) {
+                String word = matcher.group().toLowerCase(Locale.ROOT);
+                if(word.length() >= MIN_WORD_LENGTH && words.add(word)) {
+                    for(String deletion : deletions(word)) {
+                        List<String> indexed = deletions.get(deletion);
+                        if(indexed == null) {
+                            indexed = new ArrayList<>(1);
+                            deletions.put(deletion, indexed);
+                        }
+                        indexed.add(word);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param stream names of the ingredients, one for each line, not closed
+     * @return the dictionary of the ingredients
+     * @throws IOException if the stream can't be read
+     */
+    static IngredientsDictionary load(InputStream stream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, UTF_8));
+        List<String> names = new ArrayList<>();
+        String line;
+        while((line = reader.readLine()) != null) {
+            if(!line.trim().isEmpty()) {
+                names.add(line.trim());
+            }
+        }
+        return new IngredientsDictionary(names);
+    }
+
+    /**
+     * @return number of distinct words of the ingredients
+     */
+    int size() {
+        return words.size();
+    }
+
+    /**
+     * @param word a word, in lower case
+     * @return the word of the ingredients most similar to word, word itself if it's an ingredient word,
+     * too short or without a similar ingredient word
+     */
+    String correctWord(String word) {
+        if(word.length() < MIN_WORD_LENGTH || words.contains(word)) {
+            return word;
+        }
+        long started = System.nanoTime();
+        String best = word;
+        double bestSimilarity = MIN_SIMILARITY;
+        for(String deletion : deletions(word)) {
+            List<String> candidates = deletions.get(deletion);
+            if(candidates == null) {
+                continue;
+            }
+            for(String candidate : candidates) {
+                //the similarity is computed only if it can exceed the best one found
+                double similarity = WordSimilarity.similarity(word, candidate, bestSimilarity);
+                if(similarity > bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+        lookupNanos.addAndGet(System.nanoTime() - started);
+        lookups.incrementAndGet();
+        if(!best.equals(word)) {
+            corrections.incrementAndGet();
+        }
+        return best;
+    }
+
+    /**
+     * Corrects each word of a text, keeping the separators and the case of the words
+     * @param text text extracted by the OCR
+     * @return the text with the words broken replaced by the ingredient words
+     */
+    String correctText(String text) {
+        Matcher matcher = WORD.matcher(text);
+        StringBuilder corrected = new StringBuilder(text.length());
+        int last = 0;
+        while(matcher.find()) {
+            String word = matcher.group();
+            String lowerCase = word.toLowerCase(Locale.ROOT);
+            String correction = correctWord(lowerCase);
+            corrected.append(text, last, matcher.start());
+            if(correction.equals(lowerCase)) {
+                corrected.append(word);
+            } else if(word.equals(word.toUpperCase(Locale.ROOT))) {
+                //the labels often print the ingredients in upper case
+                corrected.append(correction.toUpperCase(Locale.ROOT));
+            } else if(Character.isUpperCase(word.charAt(0))) {
+                corrected.append(Character.toUpperCase(correction.charAt(0))).append(correction, 1, correction.length());
+            } else {
+                corrected.append(correction);
+            }
+            last = matcher.end();
+        }
+        corrected.append(text, last, text.length());
+        return corrected.toString();
+    }
+
+    /**
+     * @return number of words looked up in the dictionary, the ingredient words and the short ones excluded
+     */
+    long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return number of words replaced by an ingredient word
+     */
+    long getCorrections() {
+        return corrections.get();
+    }
+
+    /**
+     * @return average time of a lookup in microseconds, 0 without lookups
+     */
+    double getMeanLookupMicros() {
+        long count = lookups.get();
+        return count == 0 ? 0 : lookupNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * @return the word and the distinct strings obtained deleting up to MAX_EDITS characters from it
+     */
+    private static HashSet<String> deletions(String word) {
+        HashSet<String> result = new HashSet<>();
+        result.add(word);
+        ArrayList<String> current = new ArrayList<>();
+        current.add(word);
+        for(int edit = 0; edit < MAX_EDITS; edit++) {
+            ArrayList<String> next = new ArrayList<>();
+            for(String string : current) {
+                for(int i = 0; i < string.length(); i++) {
+                    String deletion = string.substring(0, i) + string.substring(i + 1);
+                    if(result.add(deletion)) {
+                        next.add(deletion);
+                    }
+                }
+            }
+            current = next;
+        }
+        return result;
+    }
+}
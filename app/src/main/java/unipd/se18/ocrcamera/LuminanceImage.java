@@ -0,0 +1,110 @@
+package unipd.se18.ocrcamera;
+
+import android.graphics.Bitmap;
+
+/**
+ * Grayscale copy of a picture, usually downscaled, used by the analyses that look only at the
+ * brightness of the pixels: working on a small array of luminances instead of the Bitmap avoids
+ * a call to the framework for each pixel and can be done on any JVM.
+ */
+class LuminanceImage {
+
+    private final int width;
+    private final int height;
+    private final int[] values;
+
+    /**
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param values luminance of each pixel between 0 and 255, row by row
+     */
+    LuminanceImage(int width, int height, int[] values) {
+        if(values.length < width * height) {
+            throw new IllegalArgumentException("Not enough values for " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.values = values;
+    }
+
+    /**
+     * @param bitmap the picture
+     * @param maxWidth the picture is downscaled to this width if larger, keeping the aspect ratio
+     * @return the luminance of the downscaled picture, null if the bitmap can't be read
+     */
+    static LuminanceImage fromBitmap(Bitmap bitmap, int maxWidth) {
+        Bitmap scaled = bitmap;
+        if(bitmap.getWidth() > maxWidth) {
+            int scaledHeight = Math.max(1, bitmap.getHeight() * maxWidth / bitmap.getWidth());
+            scaled = Bitmap.createScaledBitmap(bitmap, maxWidth, scaledHeight, true);
+        }
+        if(scaled == null || scaled.getWidth() <= 0 || scaled.getHeight() <= 0) {
+            return null;
+        }
+
+        int width = scaled.getWidth();
+        int height = scaled.getHeight();
+        int[] pixels = new int[width * height];
+        scaled.getPixels(pixels, 0, width, 0, 0, width, height);
+        if(scaled != bitmap) {
+            scaled.recycle();
+        }
+
+        for(int i = 0; i < pixels.length; i++) {
+            pixels[i] = luminance(pixels[i]);
+        }
+        return new LuminanceImage(width, height, pixels);
+    }
+
+    /**
+     * @param color color in ARGB format
+     * @return perceived brightness of the color between 0 and 255 (Rec. 601 weights, in integer arithmetic)
+     */
+    static int luminance(int color) {
+        int red = (color >> 16) & 0xFF;
+        int green = (color >> 8) & 0xFF;
+        int blue = color & 0xFF;
+        return (red * 299 + green * 587 + blue * 114) / 1000;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return luminance of the pixel between 0 and 255
+     */
+    int get(int x, int y) {
+        return values[y * width + x];
+    }
+
+    /**
+     * Downscales the image averaging the pixels covered by each new pixel
+     * @param newWidth width in pixels, not greater than the current one
+     * @param newHeight height in pixels, not greater than the current one
+     * @return the downscaled image
+     */
+    LuminanceImage downscale(int newWidth, int newHeight) {
+        int[] newValues = new int[newWidth * newHeight];
+        for(int y = 0; y < newHeight; y++) {
+            int startY = y * height / newHeight;
+            int endY = Math.max(startY + 1, (y + 1) * height / newHeight);
+            for(int x = 0; x < newWidth; x++) {
+                int startX = x * width / newWidth;
+                int endX = Math.max(startX + 1, (x + 1) * width / newWidth);
+                int sum = 0;
+                for(int sy = startY; sy < endY; sy++) {
+                    for(int sx = startX; sx < endX; sx++) {
+                        sum += values[sy * width + sx];
+                    }
+                }
+                newValues[y * newWidth + x] = sum / ((endY - startY) * (endX - startX));
+            }
+        }
+        return new LuminanceImage(newWidth, newHeight, newValues);
+    }
+}
@@ -0,0 +1,43 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Measures how much the phone is moving from the accelerometer: moving average of the change
+ * of the acceleration between consecutive readings, 0 when the phone is still
+ */
+class MotionMeter {
+
+    //weight of the last reading in the moving average
+    private static final float SMOOTHING = 0.3f;
+
+    private float lastX;
+    private float lastY;
+    private float lastZ;
+    private boolean first = true;
+    private float motion = 0;
+
+    /**
+     * @param x acceleration along x in m/s^2
+     * @param y acceleration along y in m/s^2
+     * @param z acceleration along z in m/s^2
+     */
+    synchronized void onAcceleration(float x, float y, float z) {
+        if(!first) {
+            float dx = x - lastX;
+            float dy = y - lastY;
+            float dz = z - lastZ;
+            float change = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            motion += SMOOTHING * (change - motion);
+        }
+        first = false;
+        lastX = x;
+        lastY = y;
+        lastZ = z;
+    }
+
+    /**
+     * @return average change of the acceleration between readings in m/s^2, 0 if the phone is still
+     */
+    synchronized float getMotion() {
+        return motion;
+    }
+}
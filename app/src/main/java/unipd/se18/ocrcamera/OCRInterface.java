@@ -3,10 +3,33 @@ package unipd.se18.ocrcamera;
 import android.graphics.Bitmap;
 
 interface OCRInterface {
+
+    /**
+     * Text returned by getTextFromImg(Bitmap) when the extraction fails or the thread is interrupted
+     */
+    String EXTRACTION_FAILED = "Failed to extract text.";
+
     /**
      * Wrapper for OCR libraries. Extract a text from a given image.
+     * The failures can't be told apart from a recognized text: the callers that must know,
+     * for instance to store the text, should use OcrFuture.extract() instead.
      * @param img The image in a Bitmap format
-     * @return The String of the text recognized (empty String if nothing is recognized)
+     * @return The String of the text recognized (empty String if nothing is recognized),
+     * EXTRACTION_FAILED if the extraction fails
      */
     String getTextFromImg(Bitmap img);
+
+    /**
+     * Asynchronous version of getTextFromImg(Bitmap): returns immediately, no thread waits for the extraction.
+     * Exactly one method of the listener is called, on a background thread, when the extraction ends.
+     * The image must not be changed or recycled until then.
+     * @param img The image in a Bitmap format
+     * @param listener receives the text recognized, should return quickly
+     */
+    void getTextFromImg(Bitmap img, OCRListener listener);
+
+    /**
+     * @return name and version of the OCR engine, texts extracted by different versions may differ
+     */
+    String getVersion();
 }
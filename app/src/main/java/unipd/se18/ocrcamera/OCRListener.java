@@ -0,0 +1,16 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Receives the result of an asynchronous text extraction, see OCRInterface.getTextFromImg(Bitmap, OCRListener)
+ */
+interface OCRListener {
+    /**
+     * @param text the text recognized (empty String if nothing is recognized)
+     */
+    void onTextRecognized(String text);
+
+    /**
+     * @param e the reason of the failure
+     */
+    void onTextRecognitionFailed(Exception e);
+}
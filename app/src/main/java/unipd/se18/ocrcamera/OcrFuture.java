@@ -0,0 +1,98 @@
+package unipd.se18.ocrcamera;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous text extraction, to be collected later.
+ * Only the thread calling get() waits, and only when it needs the text.
+ * Cancelling doesn't stop the extraction, its result is just ignored.
+ */
+class OcrFuture implements Future<String>, OCRListener {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private String text;
+    private Exception failure;
+    private boolean cancelled = false;
+
+    /**
+     * Starts the extraction of the text
+     * @param ocr the OCR engine
+     * @param img The image in a Bitmap format, must not be changed or recycled until the extraction is done
+     * @return the future text
+     */
+    static OcrFuture extract(OCRInterface ocr, Bitmap img) {
+        OcrFuture future = new OcrFuture();
+        ocr.getTextFromImg(img, future);
+        return future;
+    }
+
+    @Override
+    public void onTextRecognized(String text) {
+        complete(text, null);
+    }
+
+    @Override
+    public void onTextRecognitionFailed(Exception e) {
+        complete(null, e);
+    }
+
+    private synchronized void complete(String text, Exception failure) {
+        if(isDone()) {
+            return;
+        }
+        this.text = text;
+        this.failure = failure;
+        done.countDown();
+    }
+
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if(isDone()) {
+            return false;
+        }
+        cancelled = true;
+        done.countDown();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public String get() throws InterruptedException, ExecutionException {
+        done.await();
+        return getResult();
+    }
+
+    @Override
+    public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if(!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private synchronized String getResult() throws ExecutionException {
+        if(cancelled) {
+            throw new CancellationException();
+        }
+        if(failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,133 @@
+package unipd.se18.ocrcamera;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of the texts extracted by the OCR, used to run again the tests without
+ * recognizing again the pictures that didn't change.
+ * Each text is stored in its own file, named with the hash of the picture content and of the
+ * version of the OCR engine: a changed picture or a new engine simply miss the cache.
+ */
+class OcrResultCache {
+
+    private static final String TAG = "OcrResultCache";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final byte[] engineVersion;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param directory directory where the texts are stored, created if it doesn't exist
+     * @param engineVersion version and configuration of the OCR engine producing the texts
+     */
+    OcrResultCache(File directory, String engineVersion) {
+        this.directory = directory;
+        this.engineVersion = engineVersion.getBytes(UTF_8);
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Can't create the cache directory " + directory.getPath());
+        }
+    }
+
+    /**
+     * @param content content of the picture file
+     * @return key of the text extracted from the picture by the current engine
+     */
+    String getKey(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(engineVersion);
+            digest.update((byte) 0);
+            digest.update(content);
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            //SHA-256 is available on every Android version
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param key key returned by getKey()
+     * @return the text stored with the key, null if not found
+     */
+    String get(String key) {
+        File file = new File(directory, key + ".txt");
+        if(file.isFile()) {
+            try {
+                String text = new String(Utils.readFile(file), UTF_8);
+                hits.incrementAndGet();
+                return text;
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading " + file.getPath());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a text, written to a temporary file and renamed so that a stored text is never partial
+     * @param key key returned by getKey()
+     * @param text text extracted by the OCR
+     */
+    void put(String key, String text) {
+        File file = new File(directory, key + ".txt");
+        File tempFile = new File(directory, key + ".tmp");
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(tempFile);
+            stream.write(text.getBytes(UTF_8));
+            stream.close();
+            stream = null;
+            if(!tempFile.renameTo(file)) {
+                Log.e(TAG, "Can't rename " + tempFile.getPath());
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing " + file.getPath());
+            tempFile.delete();
+        } finally {
+            if(stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of texts found since the creation of the cache
+     */
+    int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of texts not found since the creation of the cache
+     */
+    int getMisses() {
+        return misses.get();
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,112 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Orientation of the phone from the accelerometer readings, as the clockwise rotation in degrees
+ * (0, 90, 180 or 270) needed to show upright a photo taken by the phone.
+ * The gravity is the moving average of the last readings, kept in a ring buffer, and the rotation
+ * changes only when the phone turns past the boundary between two rotations by some degrees
+ * (hysteresis), so that a phone held near 45 degrees doesn't keep flipping.
+ * Nothing is allocated for each reading.
+ */
+class OrientationFilter {
+
+    /**
+     * Rotation before the first reading not taken with the phone flat
+     */
+    static final int ROTATION_UNKNOWN = -1;
+
+    //degrees from the center of a rotation to the boundary with the next one
+    private static final int HALF_SECTOR = 45;
+
+    private final int hysteresis;
+
+    //last readings, the oldest at next
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+    private int next = 0;
+    private int count = 0;
+    private double sumX = 0;
+    private double sumY = 0;
+    private double sumZ = 0;
+
+    private int rotation = ROTATION_UNKNOWN;
+
+    /**
+     * @param window number of readings averaged, at least 1
+     * @param hysteresis degrees past the boundary between two rotations needed to change rotation
+     */
+    OrientationFilter(int window, int hysteresis) {
+        int size = Math.max(1, window);
+        this.xs = new float[size];
+        this.ys = new float[size];
+        this.zs = new float[size];
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * @param x acceleration along x in m/s^2
+     * @param y acceleration along y in m/s^2
+     * @param z acceleration along z in m/s^2
+     * @return the rotation after the reading, see getRotation()
+     */
+    int onAcceleration(float x, float y, float z) {
+        //the oldest reading leaves the average when the buffer is full
+        if(count == xs.length) {
+            sumX -= xs[next];
+            sumY -= ys[next];
+            sumZ -= zs[next];
+        } else {
+            count++;
+        }
+        xs[next] = x;
+        ys[next] = y;
+        zs[next] = z;
+        sumX += x;
+        sumY += y;
+        sumZ += z;
+        next = (next + 1) % xs.length;
+
+        float gravityX = (float) (sumX / count);
+        float gravityY = (float) (sumY / count);
+        float gravityZ = (float) (sumZ / count);
+
+        //the angle isn't reliable with the phone almost flat, the last rotation is kept
+        float magnitude = gravityX * gravityX + gravityY * gravityY;
+        if(magnitude * 4 < gravityZ * gravityZ) {
+            return rotation;
+        }
+
+        //angle of the phone, 0 when upright, rounded to the nearest sector it's the rotation of the photos
+        int angle = 90 - (int) Math.round(Math.toDegrees(Math.atan2(gravityY, -gravityX)));
+        angle = ((angle % 360) + 360) % 360;
+
+        if(rotation == ROTATION_UNKNOWN || angularDistance(angle, rotation) > HALF_SECTOR + hysteresis) {
+            rotation = nearestSector(angle);
+        }
+        return rotation;
+    }
+
+    /**
+     * @return clockwise rotation in degrees needed to show upright a photo taken now, ROTATION_UNKNOWN
+     * if the phone has always been flat
+     */
+    int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * @return angle at the center of the sector of 90 degrees containing angle: 0, 90, 180 or 270
+     */
+    private static int nearestSector(int angle) {
+        return ((angle + HALF_SECTOR) / 90 * 90) % 360;
+    }
+
+    /**
+     * @return distance in degrees between two angles, between 0 and 180
+     */
+    private static int angularDistance(int angle, int other) {
+        int distance = Math.abs(angle - other) % 360;
+        return distance > 180 ? 360 - distance : distance;
+    }
+}
@@ -0,0 +1,40 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Perceptual hash of a picture (difference hash): 64 bits telling, on a grid of 9x8 cells,
+ * whether each cell is brighter than the next one on the right. Pictures that look the same,
+ * even if taken again or compressed differently, have hashes differing in few bits.
+ */
+final class PerceptualHash {
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * @param image the picture, at least 9x8 pixels
+     * @return the difference hash of the picture
+     */
+    static long dHash(LuminanceImage image) {
+        LuminanceImage grid = image.downscale(GRID_WIDTH, GRID_HEIGHT);
+        long hash = 0;
+        for(int y = 0; y < GRID_HEIGHT; y++) {
+            for(int x = 0; x < GRID_WIDTH - 1; x++) {
+                hash <<= 1;
+                if(grid.get(x, y) > grid.get(x + 1, y)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return number of different bits between two hashes, between 0 and 64
+     */
+    static int distance(long hash, long other) {
+        return Long.bitCount(hash ^ other);
+    }
+}
@@ -0,0 +1,274 @@
+package unipd.se18.ocrcamera;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the texts extracted from the photos taken by the user, so that a photo of a label
+ * taken again shortly after is not recognized again.
+ * The photos are found by perceptual hash (see PerceptualHash): a photo whose hash is close to the one
+ * of a cached photo is then verified comparing a thumbnail of the two, normalized on the brightness, cell by cell:
+ * a label with the same layout but a different word differs only in a few cells, which a mean would hide.
+ * The cache keeps the most recently used photos and is stored in a single file by save().
+ */
+class PerceptualOcrCache {
+
+    private static final String TAG = "PerceptualOcrCache";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Maximum number of different bits between the hashes of two photos of the same label
+     */
+    static final int MAX_HASH_DISTANCE = 4;
+
+    /**
+     * Difference of luminance above which a cell of the thumbnails of two photos is different
+     */
+    static final int CELL_TOLERANCE = 16;
+
+    /**
+     * Maximum number of different cells between the thumbnails of two photos of the same label
+     */
+    static final int MAX_DIFFERENT_CELLS = 8;
+
+    /**
+     * Width to which the photos can be downscaled before computing their key
+     */
+    static final int KEY_WIDTH = 128;
+
+    //side of the thumbnail used to verify the photos found by hash
+    private static final int SIGNATURE_SIZE = 32;
+
+    private final File file;
+    private final String engineVersion;
+    private final LinkedHashMap<Long, CachedText> entries;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * Loads the texts stored by the same engine
+     * @param file file of the cache, missing if the cache is empty
+     * @param engineVersion version and configuration of the OCR engine producing the texts
+     * @param capacity maximum number of photos, the least recently used are removed
+     */
+    PerceptualOcrCache(File file, String engineVersion, final int capacity) {
+        this.file = file;
+        this.engineVersion = engineVersion;
+        //in access order, the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<Long, CachedText>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedText> eldest) {
+                return size() > capacity;
+            }
+        };
+        if(file.isFile()) {
+            try {
+                load(new String(Utils.readFile(file), UTF_8));
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Error reading " + file.getPath());
+            }
+        }
+    }
+
+    /**
+     * @param image the photo, at least 32x32 pixels
+     * @return the key of the photo in the cache
+     */
+    static Key getKey(LuminanceImage image) {
+        LuminanceImage thumbnail = image.downscale(SIGNATURE_SIZE, SIGNATURE_SIZE);
+        int sum = 0;
+        for(int y = 0; y < SIGNATURE_SIZE; y++) {
+            for(int x = 0; x < SIGNATURE_SIZE; x++) {
+                sum += thumbnail.get(x, y);
+            }
+        }
+        int mean = sum / (SIGNATURE_SIZE * SIGNATURE_SIZE);
+
+        //luminances relative to the mean, a photo taken again with a different exposure gives the same signature
+        byte[] signature = new byte[SIGNATURE_SIZE * SIGNATURE_SIZE];
+        for(int y = 0; y < SIGNATURE_SIZE; y++) {
+            for(int x = 0; x < SIGNATURE_SIZE; x++) {
+                int value = (thumbnail.get(x, y) - mean) / 2;
+                signature[y * SIGNATURE_SIZE + x] = (byte) Math.max(-128, Math.min(127, value));
+            }
+        }
+        return new Key(PerceptualHash.dHash(image), signature);
+    }
+
+    /**
+     * @param key key of the photo
+     * @return the text of the cached photo closest to the photo, null if no cached photo looks the same
+     */
+    synchronized String get(Key key) {
+        CachedText best = null;
+        int bestDistance = MAX_HASH_DISTANCE + 1;
+        for(CachedText entry : entries.values()) {
+            int distance = PerceptualHash.distance(key.hash, entry.key.hash);
+            if(distance < bestDistance && key.differentCells(entry.key) <= MAX_DIFFERENT_CELLS) {
+                best = entry;
+                bestDistance = distance;
+            }
+        }
+        if(best == null) {
+            misses++;
+            return null;
+        }
+        //marks the photo as the most recently used
+        entries.get(best.key.hash);
+        hits++;
+        return best.text;
+    }
+
+    /**
+     * @param key key of the photo
+     * @param text text extracted from the photo
+     */
+    synchronized void put(Key key, String text) {
+        entries.put(key.hash, new CachedText(key, text));
+    }
+
+    /**
+     * Writes the cache to its file, to a temporary file renamed so that the cache is never partial
+     */
+    synchronized void save() {
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = null;
+        try {
+            JSONArray array = new JSONArray();
+            //from the least recently used, so that the order is the same when loaded
+            for(CachedText entry : entries.values()) {
+                JSONObject object = new JSONObject();
+                object.put("hash", entry.key.hash);
+                object.put("signature", toHex(entry.key.signature));
+                object.put("text", entry.text);
+                array.put(object);
+            }
+            JSONObject content = new JSONObject();
+            content.put("engine", engineVersion);
+            content.put("entries", array);
+
+            stream = new FileOutputStream(tempFile);
+            stream.write(content.toString().getBytes(UTF_8));
+            stream.close();
+            stream = null;
+            if(!tempFile.renameTo(file)) {
+                Log.e(TAG, "Can't rename " + tempFile.getPath());
+                tempFile.delete();
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error writing " + file.getPath());
+            tempFile.delete();
+        } finally {
+            if(stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of photos cached
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of texts found since the creation of the cache
+     */
+    synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of texts not found since the creation of the cache
+     */
+    synchronized int getMisses() {
+        return misses;
+    }
+
+    private void load(String content) throws JSONException {
+        JSONObject object = new JSONObject(content);
+        if(!engineVersion.equals(object.optString("engine"))) {
+            Log.i(TAG, "Cache of a different engine, discarded");
+            return;
+        }
+        JSONArray array = object.getJSONArray("entries");
+        for(int i = 0; i < array.length(); i++) {
+            JSONObject entry = array.getJSONObject(i);
+            put(new Key(entry.getLong("hash"), fromHex(entry.getString("signature"))), entry.getString("text"));
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * Key of a photo: its perceptual hash and a thumbnail to verify the photos with a close hash
+     */
+    static class Key {
+        private final long hash;
+        private final byte[] signature;
+
+        private Key(long hash, byte[] signature) {
+            this.hash = hash;
+            this.signature = signature;
+        }
+
+        /**
+         * @return number of cells of the thumbnails of the two photos whose luminance differs more than CELL_TOLERANCE
+         */
+        int differentCells(Key other) {
+            if(signature.length != other.signature.length) {
+                return Integer.MAX_VALUE;
+            }
+            int cells = 0;
+            for(int i = 0; i < signature.length; i++) {
+                //the signature holds half the luminance
+                if(2 * Math.abs(signature[i] - other.signature[i]) > CELL_TOLERANCE) {
+                    cells++;
+                }
+            }
+            return cells;
+        }
+    }
+
+    private static class CachedText {
+        private final Key key;
+        private final String text;
+
+        CachedText(Key key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+}
@@ -1,23 +1,26 @@
 package unipd.se18.ocrcamera;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Log;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
-
-import info.debatty.java.stringsimilarity.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * Class built to test the application's OCR
@@ -34,6 +37,60 @@ public class PhotoTester {
     //stores the path of the directory containing test files
     private String dirPath;
 
+    private static final String REPORT_FILE_NAME = "report.txt";
+
+    //directory, inside the tests directory, containing the texts already extracted
+    private static final String OCR_CACHE_DIR_NAME = ".ocrcache";
+
+    //texts extracted in the previous runs, null if disabled
+    private volatile OcrResultCache ocrCache;
+
+    //qualities of the pictures measured in the previous runs, used by the quality gate
+    private final QualityScoreCache qualityCache;
+
+    //engine used instead of the real OCR to measure the throughput of the tests, null if disabled
+    private volatile SimulatedOcr simulatedOcr;
+
+    //statistics of the last run, updated as each test ends
+    private volatile TestStatistics statistics = new TestStatistics();
+
+    //statistics of the last run by resolution tier, see resolutionTierId()
+    private volatile TestStatistics resolutionStatistics = new TestStatistics();
+
+    //downscale factor of the pictures before the OCR, 0 to choose it for each picture (see AdaptiveResolutionOcr)
+    private volatile int resolutionFactor = 0;
+
+    //rejects the pictures too poor for the OCR, null to recognize every picture
+    private volatile QualityGate qualityGate = null;
+
+    //pictures rejected by the quality gate in the last run, by QualityGate.Reason
+    private volatile AtomicIntegerArray qualityRejections = new AtomicIntegerArray(QualityGate.Reason.values().length);
+
+    //width of the pictures decoded to compute their perceptual hash
+    private static final int HASH_WIDTH = 64;
+
+    //perceptual hash of each picture, computed the first time the duplicates are searched
+    private long[] pictureHashes = null;
+    private boolean[] hashedPictures = null;
+
+    //maximum distance between the hashes of two near-duplicates tested only once, -1 to test every picture
+    private volatile int duplicateMaxDistance = -1;
+
+    //dictionary correcting the extracted texts before the comparison, null to compare them as extracted
+    private volatile IngredientsDictionary ingredientsDictionary = null;
+
+    //lookups, corrections and total lookup time in microseconds of the dictionary in the last run,
+    //the dictionary may be shared so its counters include the other uses
+    private volatile long[] dictionaryRunStats = null;
+
+    //number of items each worker of the pipeline can have waiting in its queue
+    private static final int QUEUE_SLOTS_PER_WORKER = 2;
+
+    //number of workers of the decode and score stages, and of extractions in flight in the OCR stage
+    private int decodeWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int ocrWorkers = Runtime.getRuntime().availableProcessors();
+    private int scoreWorkers = Runtime.getRuntime().availableProcessors();
+
 
     /**
      * Load test elements (images + description)
@@ -46,7 +103,14 @@ public class PhotoTester {
         dirPath = directory.getPath();
         Log.v(TAG, "PhotoTester -> dirPath == " + dirPath);
 
-        for (File file : directory.listFiles()) {
+        ocrCache = new OcrResultCache(new File(directory, OCR_CACHE_DIR_NAME), getOcrVersion());
+        qualityCache = QualityScoreCache.forDirectory(directory);
+
+        //sorted so that the tests, and the records of the report, always have the same order
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+
+        for (File file : files) {
 
             String filePath = file.getPath();
 
@@ -56,14 +120,12 @@ public class PhotoTester {
 
             //Each photo has a description.txt with the same filename - so when an image is found we know the description filename
             if(Arrays.asList(IMAGE_EXTENSIONS).contains(fileExtension)) {
-                Bitmap photoBitmap = Utils.loadBitmapFromFile(filePath);
-
                 String photoDesc= Utils.getTextFromFile(dirPath + "/" + fileName + ".txt");
 
-                //create test element giving filename, description and bitmap
+                //create test element giving filename, description and picture path, the picture is decoded when tested
                 try {
                     JSONObject jsonPhotoDescription = new JSONObject(photoDesc);
-                    testElements.add(new TestElement(photoBitmap, jsonPhotoDescription, fileName));
+                    testElements.add(new TestElement(filePath, jsonPhotoDescription, fileName));
                 } catch(JSONException e) {
                     e.printStackTrace();
                     Log.e(TAG, "Error decoding JSON");
@@ -93,62 +155,338 @@ public class PhotoTester {
 
 
     /**
-     * Elaborate tests using threads, stores the json report to string in testReport.txt
-     * @return String in JSON format with the test's report, each object is named with the filename and contains:
+     * Elaborate tests through a pipeline of three stages (decode, OCR and score), each with its
+     * own pool of workers and connected by bounded queues. The record of each test is appended
+     * to report.txt as soon as the test ends, in the order of the tests.
+     * @return the report file in JSON format, null if it can't be written. Each object is named with the filename and contains:
      * ingrediens, tags, notes, original photo name, confidence
      * @author Luca Moroldo (g3)
      */
-    public String testAndReport() {
+    public File testAndReport() {
 
         Log.i(TAG,"testAndReport started");
         long started = java.lang.System.currentTimeMillis();
+        statistics = new TestStatistics();
+        resolutionStatistics = new TestStatistics();
+        qualityRejections = new AtomicIntegerArray(QualityGate.Reason.values().length);
+        IngredientsDictionary dictionary = ingredientsDictionary;
+        long[] dictionaryStart = getDictionaryCounters(dictionary);
 
-        final JSONObject jsonReport = new JSONObject();
+        ReportWriter reportWriter;
+        try {
+            reportWriter = new ReportWriter(dirPath, REPORT_FILE_NAME);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening report file.");
+            e.printStackTrace();
+            return null;
+        }
 
-        int totalTestElements = testElements.size();
+        List<TestElement> tests = getTestsToRun();
+        int totalTestElements = tests.size();
+
+        Log.i(TAG, "workers: decode == " + decodeWorkers + ", ocr == " + ocrWorkers + ", score == " + scoreWorkers);
+
+        //tests started and not yet written to the report: twice the items the pipeline can hold,
+        //so that the pipeline is always full but the records waiting for a slow test stay bounded
+        int maxPendingTests = 2 * (QUEUE_SLOTS_PER_WORKER + 1) * (decodeWorkers + ocrWorkers + scoreWorkers);
+        Semaphore pendingTests = new Semaphore(maxPendingTests);
+        ReportSink reportSink = new ReportSink(reportWriter, pendingTests, maxPendingTests);
+
+        //an extraction at a time for each OCR worker, on the recognizer shared by the app
+        TextExtractor textExtractor = simulatedOcr == null ? new TextExtractor(ocrWorkers) : null;
+
+        //the stages are built from the last one since each stage feeds the next one
+        PipelineStage<TestJob, TestJob> scoreStage = new PipelineStage<>("score",
+                scoreWorkers, scoreWorkers * QUEUE_SLOTS_PER_WORKER, new ScoreProcessor(), reportSink);
+        //no thread waits for the OCR: each result is handed to the score stage by the thread notifying it
+        AsyncPipelineStage<TestJob, TestJob> ocrStage = new AsyncPipelineStage<>("ocr",
+                ocrWorkers, new OcrProcessor(textExtractor == null ? null
+                        : new AdaptiveResolutionOcr(textExtractor, resolutionFactor)), scoreStage);
+        PipelineStage<TestJob, TestJob> decodeStage = new PipelineStage<>("decode",
+                decodeWorkers, decodeWorkers * QUEUE_SLOTS_PER_WORKER, new DecodeProcessor(), ocrStage);
+        scoreStage.setDropListener(reportSink);
+        ocrStage.setDropListener(reportSink);
+        decodeStage.setDropListener(reportSink);
+
+        boolean cancelled = false;
+        try {
+            for(int i = 0; i < totalTestElements; i++){
+                pendingTests.acquire();
+                decodeStage.put(new TestJob(i, tests.get(i)));
+            }
 
-        //stores the total number of tests
-        CountDownLatch countDownLatch = new CountDownLatch(totalTestElements);
+            //wait for all tests to complete
+            decodeStage.finish();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            decodeStage.cancel();
+            cancelled = true;
+        } catch (Error e) {
+            //the workers stopped by the error dropped their tests, so the report is incomplete
+            Log.e(TAG, "testAndReport -> tests stopped by an error", e);
+            cancelled = true;
+        }
 
-        int max_concurrent_tasks = Runtime.getRuntime().availableProcessors();
-        Log.i(TAG, "max_concurrent_tasks == " + max_concurrent_tasks + " (number of the available cores)");
-        Semaphore availableThread = new Semaphore(max_concurrent_tasks);
+        long ended = java.lang.System.currentTimeMillis();
+        Log.i(TAG,"testAndReport ended (" + totalTestElements + " pics tested in " + (ended - started) + " ms)");
+        if(textExtractor != null) {
+            textExtractor.close();
+            Log.i(TAG, "testAndReport -> waits for a recognizer slot == " + textExtractor.getRecognizerWaits());
+        }
+        if(ocrCache != null) {
+            Log.i(TAG, "testAndReport -> OCR cache hits == " + ocrCache.getHits() + ", misses == " + ocrCache.getMisses());
+        }
+        if(dictionary != null) {
+            long[] dictionaryEnd = getDictionaryCounters(dictionary);
+            long[] runStats = new long[dictionaryEnd.length];
+            for(int i = 0; i < runStats.length; i++) {
+                runStats[i] = dictionaryEnd[i] - dictionaryStart[i];
+            }
+            dictionaryRunStats = runStats;
+            Log.i(TAG, "testAndReport -> dictionary lookups == " + runStats[0] + ", corrections == "
+                    + runStats[1] + ", lookup time == " + runStats[2] + " us");
+        } else {
+            dictionaryRunStats = null;
+        }
+        if(qualityGate != null) {
+            qualityCache.save();
+            Log.i(TAG, "testAndReport -> quality cache hits == " + qualityCache.getHits() + ", misses == " + qualityCache.getMisses());
+        }
 
-        for(TestElement test : testElements){
+        //replace the previous report only if every test has been written
+        File report = null;
+        try {
+            if(cancelled) {
+                throw new IOException("Tests cancelled or failed, the previous report is kept");
+            }
+            report = reportWriter.commit(totalTestElements);
+            Log.i(TAG, "testAndReport -> " + reportWriter.getWrittenRecords() + " records written to " + report.getPath());
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing report to file.");
+            e.printStackTrace();
+        } finally {
             try {
-                //wait for available thread
-                availableThread.acquire();
+                reportWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
-                //launch thread
-                new Thread(new RunnableTest(jsonReport, test, countDownLatch, availableThread)).start();
+        return report;
+    }
 
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    /**
+     * Sets the number of workers of each stage of the pipeline used by testAndReport()
+     * @param decode workers loading the pictures, at least 1
+     * @param ocr extractions in flight at the same time, at least 1
+     * @param score workers comparing the extracted text with the correct one, at least 1
+     */
+    void setPipelineWorkers(int decode, int ocr, int score) {
+        this.decodeWorkers = Math.max(1, decode);
+        this.ocrWorkers = Math.max(1, ocr);
+        this.scoreWorkers = Math.max(1, score);
+    }
+
+    /**
+     * @param enabled true to reuse the texts extracted by the previous runs from the same pictures
+     *                with the same OCR engine, false to run the OCR on every picture
+     */
+    void setOcrCacheEnabled(boolean enabled) {
+        if(!enabled) {
+            ocrCache = null;
+        } else if(ocrCache == null) {
+            ocrCache = new OcrResultCache(new File(dirPath, OCR_CACHE_DIR_NAME), getOcrVersion());
+        }
+    }
+
+    /**
+     * Replaces the real OCR with a simulated one, to measure the throughput of the tests on any machine:
+     * the pictures are not read and the text of each test is produced from its correct ingredients.
+     * The OCR cache is not used, so that the simulated texts are never mixed with the real ones
+     * @param simulatedOcr the simulated engine, null to use the real OCR again
+     */
+    void setSimulatedOcr(SimulatedOcr simulatedOcr) {
+        this.simulatedOcr = simulatedOcr;
+    }
+
+    /**
+     * Sets the resolution of the pictures recognized by the OCR. Running the tests once for each
+     * tier compares accuracy and time of the tiers on the same pictures, see getResolutionStatsString()
+     * @param factor downscale factor used for every picture (one of AdaptiveResolutionOcr.DOWNSCALE_FACTORS),
+     *               0 to choose it for each picture from the size of its text
+     */
+    void setResolutionFactor(int factor) {
+        this.resolutionFactor = factor;
+        //the texts extracted at a different resolution are different
+        if(ocrCache != null) {
+            ocrCache = new OcrResultCache(new File(dirPath, OCR_CACHE_DIR_NAME), getOcrVersion());
+        }
+    }
+
+    /**
+     * Checks the quality of each picture before the OCR: the rejected pictures are not recognized
+     * and their test is reported with the reason of the rejection and an empty text
+     * @param qualityGate the gate, null to recognize every picture
+     */
+    void setQualityGate(QualityGate qualityGate) {
+        this.qualityGate = qualityGate;
+    }
+
+    /**
+     * Corrects the words of each extracted text with the ingredient words before comparing it with the
+     * correct ingredients, the corrected text is the one reported
+     * @param dictionary the dictionary of the ingredients, null to compare the texts as extracted
+     */
+    void setIngredientsDictionary(IngredientsDictionary dictionary) {
+        this.ingredientsDictionary = dictionary;
+    }
+
+    /**
+     * Tests only one picture of each cluster of near-duplicates, the first one, so that many shots
+     * of the same label don't slow down the tests and weigh on the statistics of its tags
+     * @param maxDistance maximum number of different bits between the perceptual hashes of two
+     *                    near-duplicates (see DuplicateFinder), -1 to test every picture
+     */
+    void setDeduplication(int maxDistance) {
+        this.duplicateMaxDistance = maxDistance;
+    }
+
+    /**
+     * Groups the pictures of the tests that are near-duplicates, the pictures are decoded at low
+     * resolution the first time to compute their perceptual hash
+     * @param maxDistance maximum number of different bits between the perceptual hashes of two near-duplicates
+     * @return the clusters of at least two tests, each as the positions of its tests in getTestElements()
+     */
+    List<int[]> findDuplicates(int maxDistance) {
+        computeHashes();
+        //the pictures that can't be decoded are never duplicates
+        int[] positions = new int[testElements.size()];
+        long[] hashes = new long[testElements.size()];
+        int hashed = 0;
+        for(int i = 0; i < testElements.size(); i++) {
+            if(hashedPictures[i]) {
+                positions[hashed] = i;
+                hashes[hashed] = pictureHashes[i];
+                hashed++;
             }
+        }
 
+        List<int[]> clusters = DuplicateFinder.findClusters(Arrays.copyOf(hashes, hashed), maxDistance);
+        for(int[] cluster : clusters) {
+            for(int i = 0; i < cluster.length; i++) {
+                cluster[i] = positions[cluster[i]];
+            }
         }
+        return clusters;
+    }
 
-        //wait for all tests to complete
-        try {
-            countDownLatch.await();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    /**
+     * Lists the clusters of near-duplicate pictures
+     * @param maxDistance maximum number of different bits between the perceptual hashes of two near-duplicates
+     * @return a readable text, a line for each cluster with the names of its tests
+     */
+    public String getDuplicatesString(int maxDistance) {
+        List<int[]> clusters = findDuplicates(maxDistance);
+        StringBuilder report = new StringBuilder("Near-duplicate pictures: \n");
+        for(int[] cluster : clusters) {
+            report.append(cluster.length).append(" pics :");
+            for(int position : cluster) {
+                report.append(' ').append(testElements.get(position).getFileName());
+            }
+            report.append('\n');
         }
+        return report.toString();
+    }
 
-        long ended = java.lang.System.currentTimeMillis();
-        Log.i(TAG,"testAndReport ended (" + totalTestElements + " pics tested in " + (ended - started) + " ms)");
+    /**
+     * @return the tests run by testAndReport(), all of them or one for each cluster of near-duplicates
+     */
+    private List<TestElement> getTestsToRun() {
+        int maxDistance = duplicateMaxDistance;
+        if(maxDistance < 0) {
+            return testElements;
+        }
+        int[] kept = DuplicateFinder.representatives(testElements.size(), findDuplicates(maxDistance));
+        List<TestElement> tests = new ArrayList<>(kept.length);
+        for(int position : kept) {
+            tests.add(testElements.get(position));
+        }
+        Log.i(TAG, "getTestsToRun -> " + (testElements.size() - kept.length) + " near-duplicates skipped");
+        return tests;
+    }
 
-        String report = jsonReport.toString();
+    /**
+     * Computes once the perceptual hash of the pictures, decoding them in parallel.
+     * Each task keeps only the hash, the decoded pictures are released as soon as they are hashed
+     */
+    private synchronized void computeHashes() {
+        if(pictureHashes != null) {
+            return;
+        }
+        long[] hashes = new long[testElements.size()];
+        boolean[] hashed = new boolean[testElements.size()];
 
-        //write report to file
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         try {
-            writeReportToExternalStorage(report, dirPath, "report.txt");
-        } catch (IOException e) {
-            Log.e(TAG, "Error writing report to file.");
+            List<Callable<Long>> tasks = new ArrayList<>(testElements.size());
+            for(final TestElement test : testElements) {
+                tasks.add(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        Bitmap picture = test.getPicture(HASH_WIDTH);
+                        if(picture == null) {
+                            return null;
+                        }
+                        LuminanceImage image = LuminanceImage.fromBitmap(picture, HASH_WIDTH);
+                        picture.recycle();
+                        return image == null ? null : PerceptualHash.dHash(image);
+                    }
+                });
+            }
+            List<Future<Long>> results = executor.invokeAll(tasks);
+            for(int i = 0; i < results.size(); i++) {
+                try {
+                    Long hash = results.get(i).get();
+                    if(hash != null) {
+                        hashes[i] = hash;
+                        hashed[i] = true;
+                    } else {
+                        Log.e(TAG, "computeHashes -> error decoding \"" + testElements.get(i).getPicturePath() + "\"");
+                    }
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
             e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
         }
 
-        return report;
+        pictureHashes = hashes;
+        hashedPictures = hashed;
+    }
+
+    /**
+     * @return version of the OCR engine and of the choice of the resolution, the key of the OCR cache
+     */
+    private String getOcrVersion() {
+        return TextExtractor.VERSION + AdaptiveResolutionOcr.getPolicy(resolutionFactor);
+    }
+
+    /**
+     * @param factor downscale factor of the first recognition
+     * @param fallback true if the text has been recognized again at full resolution
+     * @return id of the resolution tier in resolutionStatistics
+     */
+    private static int resolutionTierId(int factor, boolean fallback) {
+        int tier = 0;
+        while(tier < AdaptiveResolutionOcr.DOWNSCALE_FACTORS.length - 1
+                && AdaptiveResolutionOcr.DOWNSCALE_FACTORS[tier] != factor) {
+            tier++;
+        }
+        return tier * 2 + (fallback ? 1 : 0);
     }
 
     public TestElement[] getTestElements() {
@@ -164,273 +502,439 @@ public class PhotoTester {
      * @author Francesco Pham credit to Stefano Romanello for Levenshtein library suggestion
      */
     private float ingredientsTextComparison(String correct, String extracted){
+        return IngredientsComparator.compare(correct, extracted);
+    }
 
-        extracted = extracted.toLowerCase();
-        String[] extractedWords = extracted.trim().split("[ ,-:./\\n\\r]+");
-        String[] correctWords = correct.trim().split("[ ,-:./\\n\\r]+");
-
-        Log.i(TAG, "ingredientsTextComparison -> Start of comparing");
-        Log.i(TAG, "ingredientsTextComparison -> correctWords.length == " + correctWords.length + ", extractedWords.length == " + extractedWords.length);
+    /**
+     * Test travelling through the stages of the pipeline
+     */
+    private static class TestJob {
+        private final int index;
+        private final TestElement test;
+        private Bitmap picture;
+        private String cacheKey;
+        private String extractedIngredients;
+        //time spent by the OCR in milliseconds, -1 if the text was cached
+        private long ocrTime = -1;
+        //resolution of the OCR, -1 if the OCR didn't run on the picture
+        private int resolutionTierId = -1;
 
-        float points = 0;
-        int maxPoints = 0;
-        int posLastWordFound = 0;
-        int consecutiveNotFound = 0;
+        /**
+         * @param index position of the test in the report
+         * @param test the test to run
+         */
+        TestJob(int index, TestElement test) {
+            this.index = index;
+            this.test = test;
+        }
+    }
 
+    /**
+     * First stage: looks for the text in the cache, if not found decodes the picture of the test
+     * and checks its quality.
+     * The pixels live only until the OCR is done
+     */
+    private class DecodeProcessor implements PipelineStage.Processor<TestJob, TestJob> {
+        @Override
+        public TestJob process(TestJob job) throws IOException {
+            //the simulated OCR doesn't need the picture
+            if(simulatedOcr != null) {
+                return job;
+            }
 
-        WeightedLevenshtein levenshtein = new WeightedLevenshtein(
-                new CharacterSubstitutionInterface() {
-                    public double cost(char c1, char c2) {
+            File file = new File(job.test.getPicturePath());
+            byte[] content = Utils.readFile(file);
 
-                        // The cost for substituting 't' and 'r' is considered
-                        // smaller as these 2 are located next to each other
-                        // on a keyboard
-                        if (c1 == 't' && c2 == 'r') {
-                            return 0.5;
-                        }
-                        else if (c1 == 'q' && c2 == 'o') {
-                            return 0.5;
-                        }
-                        else if (c1 == 'I' && c2 == 'l') {
-                            return 0.5;
-                        }
+            OcrResultCache cache = ocrCache;
+            if(cache != null) {
+                job.cacheKey = cache.getKey(content);
+                job.extractedIngredients = cache.get(job.cacheKey);
+                if(job.extractedIngredients != null) {
+                    Log.d(TAG, "DecodeProcessor -> \"" + job.test.getFileName() + "\" found in the OCR cache");
+                    return job;
+                }
+            }
 
-                        // For most cases, the cost of substituting 2 characters
-                        // is 1.0
-                        return 1.0;
-                    }
-                });
+            //a picture already measured and rejected is not even decoded
+            QualityGate gate = qualityGate;
+            ImageQuality quality = gate == null ? null : qualityCache.get(file);
+            if(quality != null && reject(job, gate.check(quality))) {
+                return job;
+            }
 
-        for (String word : correctWords) {
-            boolean found = false;
-            int index = posLastWordFound;
-            word = word.toLowerCase();
-
-            if (word.length() >= 3) {
-                maxPoints += word.length();
-                for (int i = 0; i < extractedWords.length && !found; i++) {
-                    index = (posLastWordFound + i) % extractedWords.length;
-
-                    //Calculate similarity and normalize
-                    int maxLength = Math.max(word.length(),extractedWords[index].length());
-                    double similarity = 1.0 - levenshtein.distance(word,extractedWords[index])/maxLength;
-
-                    if (similarity > 0.8) {
-                        if (points == 0 || i < consecutiveNotFound + 10) {
-                            points += word.length()*similarity; //assign points based on number of characters
-                        } else {
-                            points += (float) word.length()*similarity/2;
-                        }
-                        Log.d(TAG, "ingredientsTextComparison -> \"" + word + "\" ==  \"" + extractedWords[index] + "\" similarity="+similarity);
-                        extractedWords[index] = ""; //remove found word
-                        found = true;
-                    }
-                }
+            job.picture = BitmapFactory.decodeByteArray(content, 0, content.length);
+            if(job.picture == null) {
+                Log.e(TAG, "DecodeProcessor -> error decoding \"" + job.test.getPicturePath() + "\"");
+                return null;
             }
 
-            if(!found && word.length() >= 6){
-                maxPoints += word.length();
-                for(int i=0; i<extractedWords.length && !found; i++) {
-                    index = (posLastWordFound+i)%extractedWords.length;
-                    if (extractedWords[index].contains(word)) {
-                        if(points==0 || i<consecutiveNotFound+10) {
-                            points += word.length(); //assign points based on number of characters
-                        } else {
-                            points += (float)word.length()/2;
-                        }
-                        Log.d(TAG, "ingredientsTextComparison -> \"" + word + "\" contained in  \"" + extractedWords[index] + "\"");
-                        extractedWords[index] = extractedWords[index].replace(word, ""); //remove found word
-                        found = true;
-                    }
+            if(gate != null && quality == null) {
+                quality = ImageQualityAnalyzer.analyze(job.picture);
+                if(quality != null) {
+                    qualityCache.put(file, quality);
+                }
+                if(reject(job, gate.check(quality))) {
+                    job.picture.recycle();
+                    job.picture = null;
                 }
             }
+            return job;
+        }
 
-            if(found){
-                consecutiveNotFound = 0;
-                posLastWordFound = index;
-            } else {
-                consecutiveNotFound++;
+        /**
+         * @param job the job to reject if its picture isn't accepted
+         * @param reason verdict of the quality gate
+         * @return true if the picture has been rejected, then the OCR is skipped
+         */
+        private boolean reject(TestJob job, QualityGate.Reason reason) {
+            if(reason == QualityGate.Reason.ACCEPTED) {
+                return false;
             }
+            Log.d(TAG, "DecodeProcessor -> \"" + job.test.getFileName() + "\" rejected: " + reason.getDescription());
+            job.test.setQualityRejection(reason.getDescription());
+            qualityRejections.incrementAndGet(reason.ordinal());
+            job.extractedIngredients = "";
+            return true;
         }
-        float confidence = (points / maxPoints)*100;
-        Log.i(TAG, "ingredientsTextComparison -> confidence == " + confidence + " (%)");
-        return confidence;
-
     }
 
     /**
-     * Write the string given as argument to a file named with the fileName argument
-     * @param report text that will be saved to filename
-     * @param dirPath path to a directory with writing permissions
-     * @param fileName name of the file - will be overwritten if already exist
-     * @author Luca Moroldo (g3)
-     * @throws IOException
+     * Second stage: extracts the text from the picture. The extraction is only started here,
+     * its result arrives later on the thread of the OCR, so no worker waits for it
      */
-    private void writeReportToExternalStorage(String report, String dirPath, String fileName) throws IOException {
-        //Write report to report.txt
-        File file = new File(dirPath, fileName);
+    private class OcrProcessor implements AsyncPipelineStage.Processor<TestJob, TestJob> {
+        private final AdaptiveResolutionOcr ocr;
 
-        file.createNewFile();
+        /**
+         * @param ocr the OCR engine, shared by the workers, null if the simulated OCR is used
+         */
+        OcrProcessor(AdaptiveResolutionOcr ocr) {
+            this.ocr = ocr;
+        }
 
-        FileOutputStream stream = null;
+        @Override
+        public void start(final TestJob job, final AsyncPipelineStage.Callback<TestJob> callback) throws JSONException {
+            //text found in the cache, or picture rejected
+            if(job.extractedIngredients != null) {
+                callback.onDone(job);
+                return;
+            }
 
-        try {
-            stream = new FileOutputStream(file);
+            final long started = java.lang.System.currentTimeMillis();
+            SimulatedOcr simulated = simulatedOcr;
+            if(simulated != null) {
+                simulated.recognize(job.test.getIngredients(), new OCRListener() {
+                    @Override
+                    public void onTextRecognized(String text) {
+                        done(job, text, started, callback);
+                    }
 
-            try {
-                stream.write(report.getBytes());
-            } finally {
-                stream.close();
+                    @Override
+                    public void onTextRecognitionFailed(Exception e) {
+                        callback.onFailed(e);
+                    }
+                });
+                return;
             }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            Log.e(TAG, "File not found");
+            final Bitmap picture = job.picture;
+            job.picture = null;
+            try {
+                ocr.extract(picture, ocr.chooseDownscaleFactor(picture), new AdaptiveResolutionOcr.ResultListener() {
+                    @Override
+                    public void onTextRecognized(String text, int factor, boolean fallback) {
+                        //release the pixels as soon as possible
+                        picture.recycle();
+                        job.resolutionTierId = resolutionTierId(factor, fallback);
+                        done(job, text, started, callback);
+                    }
+
+                    @Override
+                    public void onTextRecognitionFailed(Exception e) {
+                        picture.recycle();
+                        callback.onFailed(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                picture.recycle();
+                throw e;
+            }
         }
 
-    }
+        /**
+         * Records the text extracted and hands the job to the next stage
+         */
+        private void done(TestJob job, String text, long started, AsyncPipelineStage.Callback<TestJob> callback) {
+            job.extractedIngredients = text;
+            OcrResultCache cache = ocrCache;
+            if(cache != null && job.cacheKey != null) {
+                cache.put(job.cacheKey, job.extractedIngredients);
+            }
 
+            long ended = java.lang.System.currentTimeMillis();
+            job.ocrTime = ended - started;
+            Log.d(TAG, "OcrProcessor -> \"" + job.test.getFileName() + "\" extracted in " + job.ocrTime + " ms");
+            callback.onDone(job);
+        }
+    }
 
     /**
-     *
-     * @param bitmap from which the text is extracted
-     * @return String - the text extracted
+     * Third stage: evaluates the text extraction confidence, CPU bound
      */
-    private String executeOcr(Bitmap bitmap) {
-
-        TextExtractor textExtractor = new TextExtractor();
-        return textExtractor.getTextFromImg(bitmap);
+    private class ScoreProcessor implements PipelineStage.Processor<TestJob, TestJob> {
+        @Override
+        public TestJob process(TestJob job) throws JSONException {
+            String correctIngredients = job.test.getIngredients();
+            IngredientsDictionary dictionary = ingredientsDictionary;
+            if(dictionary != null) {
+                job.extractedIngredients = dictionary.correctText(job.extractedIngredients);
+            }
+            float confidence = ingredientsTextComparison(correctIngredients, job.extractedIngredients);
 
+            //insert test in report
+            job.test.setConfidence(confidence);
+            //insert extracted test
+            job.test.setRecognizedText(job.extractedIngredients);
 
+            statistics.add(job.test.getTagIds(), confidence, job.ocrTime);
+            if(job.resolutionTierId >= 0) {
+                resolutionStatistics.add(new int[]{job.resolutionTierId}, confidence, job.ocrTime);
+            }
+            return job;
+        }
     }
 
-
     /**
-     * Class used to run a single test
-     * @author Luca Moroldo (g3)
+     * End of the pipeline: writes the completed tests to the report, in the order of the tests.
+     * The tests dropped by a stage leave a hole in the report.
      */
-    public class RunnableTest implements Runnable {
-        private TestElement test;
-        private JSONObject jsonReport;
-        private CountDownLatch countDownLatch;
-        private Semaphore semaphore;
+    private class ReportSink implements PipelineSink<TestJob>, PipelineStage.DropListener<TestJob> {
+        private final ReportWriter reportWriter;
+        private final Semaphore pendingTests;
+        private final int maxPendingTests;
+        private boolean writeFailed = false;
 
         /**
-         *
-         * @param jsonReport JSONObject containing tests data
-         * @param test element of a test - must contain bitmap and ingredients fields
-         * @param countDownLatch used to signal the task completion
-         * @param semaphore semaphore used to signal the end of the task
+         * @param reportWriter writer of the report
+         * @param pendingTests released when the records leave the memory
+         * @param maxPendingTests permits of pendingTests
          */
-        public RunnableTest(JSONObject jsonReport, TestElement test, CountDownLatch countDownLatch, Semaphore semaphore) {
-            this.jsonReport = jsonReport;
-            this.test = test;
-            this.countDownLatch = countDownLatch;
-            this.semaphore = semaphore;
+        ReportSink(ReportWriter reportWriter, Semaphore pendingTests, int maxPendingTests) {
+            this.reportWriter = reportWriter;
+            this.pendingTests = pendingTests;
+            this.maxPendingTests = maxPendingTests;
         }
 
         @Override
-        public void run() {
+        public synchronized void put(TestJob job) {
+            if(writeFailed) {
+                pendingTests.release();
+                return;
+            }
             try {
+                JSONObject record;
+                try {
+                    record = job.test.getJsonObject();
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                    onDropped(job);
+                    return;
+                }
+                pendingTests.release(reportWriter.write(job.index, job.test.getFileName(), record));
+            } catch (IOException e) {
+                onWriteFailed(e);
+            }
+        }
 
-                Log.d(TAG,"RunnableTest -> id \"" + Thread.currentThread().getId() + "\" started");
-                long started = java.lang.System.currentTimeMillis();
-
-                //evaluate text extraction confidence
-                String extractedIngredients = executeOcr(test.getPicture());
-                String correctIngredients = test.getIngredients();
-                float confidence = ingredientsTextComparison(correctIngredients, extractedIngredients);
-
-                //insert test in report
-                test.setConfidence(confidence);
-                //insert extracted test
-                test.setRecognizedText(extractedIngredients);
+        @Override
+        public synchronized void onDropped(TestJob job) {
+            Log.e(TAG, "ReportSink -> test \"" + job.test.getFileName() + "\" failed");
+            if(writeFailed) {
+                pendingTests.release();
+                return;
+            }
+            try {
+                pendingTests.release(reportWriter.skip(job.index));
+            } catch (IOException e) {
+                onWriteFailed(e);
+            }
+        }
 
+        /**
+         * Stops writing the report, the tests still run so that their results can be shown
+         */
+        private void onWriteFailed(IOException e) {
+            Log.e(TAG, "Error writing report to file.");
+            e.printStackTrace();
+            writeFailed = true;
+            //the records waiting in the writer will never be released
+            pendingTests.release(maxPendingTests);
+        }
 
-                addTestElement(jsonReport, test);
+        @Override
+        public void finish() {
+        }
+    }
 
-                //done test process signal
-                countDownLatch.countDown();
+    /**
+     * @return statistics of the tests of the last call to testAndReport(), by tag and by pair of tags
+     */
+    TestStatistics getStatistics() {
+        return statistics;
+    }
 
-                long ended = java.lang.System.currentTimeMillis();
-                Log.d(TAG,"RunnableTest -> id \"" + Thread.currentThread().getId() + "\" ended (runned for " + (ended - started) + " ms)");
+    /**
+     * Accuracy and time of the OCR for each resolution tier used by the last call to testAndReport()
+     * @return a readable text, a line for each tier
+     */
+    public String getResolutionStatsString() {
+        TestStatistics resolutionStatistics = this.resolutionStatistics;
+        StringBuilder report = new StringBuilder("Confidence and OCR time by resolution: \n");
+        for(int tierId : resolutionStatistics.getTagIds()) {
+            TestStatistics.Group group = resolutionStatistics.getTagGroup(tierId);
+            int factor = AdaptiveResolutionOcr.DOWNSCALE_FACTORS[tierId / 2];
+            report.append(AdaptiveResolutionOcr.getTierName(factor))
+                    .append(tierId % 2 == 1 ? " + full resolution" : "")
+                    .append(" (").append(group.getConfidence().getCount()).append(" pics)")
+                    .append(" : ").append(Math.round(group.getConfidence().getMean())).append("%")
+                    .append(", median ").append(Math.round(group.getOcrTime().getPercentile(50))).append(" ms")
+                    .append(", p90 ").append(Math.round(group.getOcrTime().getPercentile(90))).append(" ms\n");
+        }
+        return report.toString();
+    }
 
-                //let start another task
-                semaphore.release();
+    /**
+     * @param dictionary the dictionary, may be null
+     * @return lookups, corrections and total lookup time in microseconds of the dictionary until now
+     */
+    private static long[] getDictionaryCounters(IngredientsDictionary dictionary) {
+        if(dictionary == null) {
+            return null;
+        }
+        long lookups = dictionary.getLookups();
+        return new long[]{lookups, dictionary.getCorrections(), Math.round(dictionary.getMeanLookupMicros() * lookups)};
+    }
 
-            }catch (JSONException e) {
-                Log.e(TAG, "Error elaborating JSON test element");
-            }
+    /**
+     * Corrections made by the ingredients dictionary in the last call to testAndReport()
+     * @return a readable text, empty if the dictionary is not set
+     */
+    public String getDictionaryStatsString() {
+        long[] runStats = dictionaryRunStats;
+        if(runStats == null) {
+            return "";
         }
+        return "Ingredients dictionary: \n"
+                + runStats[0] + " words looked up, " + runStats[1] + " corrected"
+                + ", mean lookup " + (runStats[0] == 0 ? 0 : runStats[2] / runStats[0]) + " us\n";
     }
 
     /**
-     * Puts the json object of the TestElement inside the JSONObject jsonReport, multi thread safe
-     * @param jsonReport the report containing tests in JSON format
-     * @param test element of a test
-     * @throws JSONException
-     * @author Luca Moroldo (g3)
+     * Pictures rejected by the quality gate in the last call to testAndReport()
+     * @return a readable text, a line for each reason of rejection, empty if the quality gate is not set
      */
-    synchronized void addTestElement(JSONObject jsonReport, TestElement test) throws JSONException {
-        jsonReport.put(test.getFileName(), test.getJsonObject());
+    public String getQualityStatsString() {
+        if(qualityGate == null) {
+            return "";
+        }
+        AtomicIntegerArray qualityRejections = this.qualityRejections;
+        StringBuilder report = new StringBuilder("Pictures rejected before the OCR: \n");
+        for(QualityGate.Reason reason : QualityGate.Reason.values()) {
+            int rejected = qualityRejections.get(reason.ordinal());
+            if(rejected > 0) {
+                report.append(reason.getDescription()).append(" : ").append(rejected).append(" pics\n");
+            }
+        }
+        return report.toString();
     }
 
     /**
     * Returns a HashMap of (Tag, Value) pairs where value is the average test result of the photos tagged with that Tag
     * @author Nicolò Cervo (g3) with the tutoring of Francesco Pham (g3)
     */
-    public HashMap getTagsStats() throws JSONException {
-
-        HashMap<String, Float> tagStats = new HashMap<>(); //contains the cumulative score of every tag
-
-        HashMap<String, Integer> tagOccurrences = new HashMap<>(); //contains the number of occurrences of each tag
-
-        for(TestElement element : testElements) {
-            for (String tag : element.getTags()) {
-                if(tagStats.containsKey(tag)) {
-                    float newValue = tagStats.get(tag) + element.getConfidence();
-                    tagStats.put(tag, newValue);
-                    tagOccurrences.put(tag, tagOccurrences.get(tag) + 1);
-                }else{
-                    tagStats.put(tag, element.getConfidence());
-                    tagOccurrences.put(tag, 1);
-                }
-            }
-        }
+    public HashMap getTagsStats() {
+        TestStatistics statistics = this.statistics;
+        HashMap<String, Float> tagStats = new HashMap<>();
 
         Log.i(TAG, "getTagStats():");
-        for(String tag : tagStats.keySet()){
-            tagStats.put(tag, tagStats.get(tag)/tagOccurrences.get(tag)); // average of the scores
-            Log.i(TAG, "-" + tag + " score: " + tagStats.get(tag));
+        for(int tagId : statistics.getTagIds()) {
+            String tag = TagDictionary.getName(tagId);
+            float score = (float) statistics.getTagGroup(tagId).getConfidence().getMean();
+            tagStats.put(tag, score);
+            Log.i(TAG, "-" + tag + " score: " + score);
         }
         return tagStats;
     }
 
     /**
-     * Convert statistics returned by getTagsStats() into a readable text
+     * Convert statistics of the tags into a readable text, ordered by increasing average confidence.
+     * For each tag the confidence and the OCR time are summarized by count, mean, standard deviation,
+     * min, max and percentiles
      * @author Francesco Pham (g3)
      */
-    public String getTagsStatsString() throws JSONException {
-        HashMap tagsStats = getTagsStats();
-        String report = "Average confidence by tags: \n";
-        while(!tagsStats.isEmpty()){
-            String keymin = getMinKey(tagsStats);
-            report = report + keymin + " : " + tagsStats.get(keymin) + "%\n";
-            tagsStats.remove(keymin);
+    public String getTagsStatsString() {
+        final TestStatistics statistics = this.statistics;
+        int[] tagIds = statistics.getTagIds();
+        Integer[] sortedTagIds = new Integer[tagIds.length];
+        final double[] averages = new double[TagDictionary.size()];
+        for(int i = 0; i < tagIds.length; i++) {
+            sortedTagIds[i] = tagIds[i];
+            averages[tagIds[i]] = statistics.getTagGroup(tagIds[i]).getConfidence().getMean();
         }
-        return report;
+        Arrays.sort(sortedTagIds, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer tagId1, Integer tagId2) {
+                return Double.compare(averages[tagId1], averages[tagId2]);
+            }
+        });
+
+        StringBuilder report = new StringBuilder("Confidence and OCR time by tags: \n");
+        for(int tagId : sortedTagIds) {
+            appendGroup(report, TagDictionary.getName(tagId), statistics.getTagGroup(tagId));
+        }
+        return report.toString();
     }
 
-    private String getMinKey(Map<String, Float> map) {
-        String minKey = null;
-        float minValue = Float.MAX_VALUE;
-        for(String key : map.keySet()) {
-            float value = map.get(key);
-            if(value < minValue) {
-                minValue = value;
-                minKey = key;
-            }
+    /**
+     * Statistics of the pairs of tags found together in the most tests
+     * @param maxPairs maximum number of pairs listed
+     * @return a readable text, the confidence and the OCR time of each pair, from the most frequent
+     */
+    public String getTagPairsStatsString(int maxPairs) {
+        TestStatistics statistics = this.statistics;
+        StringBuilder report = new StringBuilder("Confidence and OCR time of the most frequent pairs of tags: \n");
+        for(int[] pair : statistics.getTagPairs(maxPairs)) {
+            appendGroup(report, TagDictionary.getName(pair[0]) + " + " + TagDictionary.getName(pair[1]),
+                    statistics.getTagPairGroup(pair[0], pair[1]));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Appends the summary of a group of tests, on two lines: the confidence and the OCR time
+     */
+    private static void appendGroup(StringBuilder report, String name, TestStatistics.Group group) {
+        report.append(name).append(" (").append(group.getConfidence().getCount()).append(" pics)\n")
+                .append("  confidence ");
+        appendMetric(report, group.getConfidence(), "%");
+        report.append("  OCR time ");
+        appendMetric(report, group.getOcrTime(), " ms");
+    }
+
+    /**
+     * Appends mean, standard deviation, min, max and percentiles of a metric, on a line
+     */
+    private static void appendMetric(StringBuilder report, TestStatistics.Metric metric, String unit) {
+        if(metric.getCount() == 0) {
+            report.append("not measured\n");
+            return;
         }
-        return minKey;
+        report.append(Math.round(metric.getMean())).append(unit)
+                .append(" \u00b1 ").append(Math.round(metric.getStandardDeviation()))
+                .append(", min ").append(Math.round(metric.getMin()))
+                .append(", max ").append(Math.round(metric.getMax()))
+                .append(", p50 ").append(Math.round(metric.getPercentile(50)))
+                .append(", p90 ").append(Math.round(metric.getPercentile(90)))
+                .append(", p99 ").append(Math.round(metric.getPercentile(99))).append('\n');
     }
 }
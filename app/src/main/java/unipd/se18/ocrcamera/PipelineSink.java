@@ -0,0 +1,20 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Receiver of the items produced by a PipelineStage
+ * @param <T> type of the items received
+ */
+interface PipelineSink<T> {
+
+    /**
+     * @param item item to receive, blocks if the receiver can't accept it yet
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void put(T item) throws InterruptedException;
+
+    /**
+     * Signals that no more items will be put, returns when every item has been processed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void finish() throws InterruptedException;
+}
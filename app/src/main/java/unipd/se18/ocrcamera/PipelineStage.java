@@ -0,0 +1,236 @@
+package unipd.se18.ocrcamera;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single stage of a processing pipeline: a fixed pool of worker threads takes the items from a
+ * bounded input queue, processes them and hands the results to the next stage.
+ * When the input queue is full put() blocks, so a slow stage slows down the ones before it
+ * instead of letting the items pile up in memory.
+ * An Error thrown by the processor stops the worker that got it: once no worker is left the items
+ * put are dropped instead of waiting forever in the queue, and finish() throws the Error.
+ * @param <I> type of the items received by the stage
+ * @param <O> type of the items passed to the next stage
+ */
+class PipelineStage<I, O> implements PipelineSink<I> {
+
+    /**
+     * Work done by the stage on each item
+     * @param <I> type of the input items
+     * @param <O> type of the output items
+     */
+    interface Processor<I, O> {
+        /**
+         * @param item item to process
+         * @return the item for the next stage, null to drop it
+         * @throws Exception if the item can't be processed, the item is dropped
+         */
+        O process(I item) throws Exception;
+    }
+
+    /**
+     * Notified when a stage drops an item, because it failed or because the processor returned null
+     * @param <T> type of the items dropped
+     */
+    interface DropListener<T> {
+        /**
+         * @param item the item dropped
+         */
+        void onDropped(T item);
+    }
+
+    private static final String TAG = "PipelineStage";
+
+    /**
+     * Marker put in the queue to stop a worker
+     */
+    private static final Object END = new Object();
+
+    private final String name;
+    private final BlockingQueue<Object> queue;
+    private final List<Thread> workers;
+    private final Processor<I, O> processor;
+    private final PipelineSink<O> next;
+    private volatile DropListener<? super I> dropListener;
+
+    //workers not yet stopped, by the END marker or by an Error
+    private final AtomicInteger liveWorkers;
+
+    //first Error that stopped a worker, null if none
+    private volatile Error error = null;
+
+    /**
+     * Creates the stage and starts its workers
+     * @param name name of the stage, used for logs and thread names
+     * @param workers number of worker threads, at least 1
+     * @param capacity maximum number of items waiting in the input queue, at least 1
+     * @param processor work done on each item
+     * @param next receiver of the processed items
+     */
+    PipelineStage(String name, int workers, int capacity, Processor<I, O> processor, PipelineSink<O> next) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.processor = processor;
+        this.next = next;
+        this.workers = new ArrayList<>(Math.max(1, workers));
+        this.liveWorkers = new AtomicInteger(Math.max(1, workers));
+
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            Thread worker = new Thread(new Worker(), "PipelineStage-" + name + "-" + i);
+            this.workers.add(worker);
+            worker.start();
+        }
+        Log.d(TAG, "stage \"" + name + "\" started with " + this.workers.size() + " workers");
+    }
+
+    /**
+     * @param dropListener notified of the items dropped by this stage, should be set before putting items
+     */
+    void setDropListener(DropListener<? super I> dropListener) {
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * @param item item to process, dropped if every worker has been stopped by an Error
+     * @throws InterruptedException if interrupted while waiting for room in the queue
+     */
+    @Override
+    public void put(I item) throws InterruptedException {
+        enqueue(item);
+    }
+
+    /**
+     * Stops the workers once the queue has been drained, then finishes the next stage
+     * @throws InterruptedException if interrupted while waiting
+     * @throws Error the first Error thrown by the processor, once the next stages are finished
+     */
+    @Override
+    public void finish() throws InterruptedException {
+        for (int i = 0; i < workers.size(); i++) {
+            enqueue(END);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Log.d(TAG, "stage \"" + name + "\" finished");
+        next.finish();
+        Error error = this.error;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Puts an item or the END marker in the queue, unless no worker is left to take it
+     */
+    private void enqueue(Object item) throws InterruptedException {
+        if (liveWorkers.get() == 0) {
+            discard(item);
+            return;
+        }
+        queue.put(item);
+        //the last worker may have stopped while this thread was waiting for room in the queue
+        if (liveWorkers.get() == 0) {
+            drainQueue();
+        }
+    }
+
+    /**
+     * Drops the items left in the queue, called when no worker is left to take them
+     */
+    private void drainQueue() {
+        Object item;
+        while ((item = queue.poll()) != null) {
+            discard(item);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void discard(Object item) {
+        if (item != END) {
+            drop((I) item);
+        }
+    }
+
+    private void drop(I item) {
+        DropListener<? super I> dropListener = this.dropListener;
+        if (dropListener != null) {
+            dropListener.onDropped(item);
+        }
+    }
+
+    /**
+     * Interrupts the workers of this stage and of the following ones, pending items are lost
+     */
+    void cancel() {
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        queue.clear();
+        if (next instanceof PipelineStage) {
+            ((PipelineStage) next).cancel();
+        } else if (next instanceof AsyncPipelineStage) {
+            ((AsyncPipelineStage) next).cancel();
+        }
+    }
+
+    /**
+     * Loop run by each worker thread until the END marker is found
+     */
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                work();
+            } catch (InterruptedException e) {
+                Log.w(TAG, "stage \"" + name + "\" interrupted");
+            } catch (Error e) {
+                Log.e(TAG, "stage \"" + name + "\" worker stopped by an error", e);
+                synchronized (PipelineStage.this) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            } finally {
+                if (liveWorkers.decrementAndGet() == 0) {
+                    drainQueue();
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void work() throws InterruptedException {
+            while (true) {
+                Object item = queue.take();
+                if (item == END) {
+                    return;
+                }
+
+                O result = null;
+                try {
+                    result = processor.process((I) item);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    Log.e(TAG, "stage \"" + name + "\" failed processing an item", e);
+                } catch (Error e) {
+                    //an Error (as OutOfMemoryError) ends the worker, but the item is still accounted for
+                    drop((I) item);
+                    throw e;
+                }
+
+                if (result != null) {
+                    next.put(result);
+                } else {
+                    drop((I) item);
+                }
+            }
+        }
+    }
+}
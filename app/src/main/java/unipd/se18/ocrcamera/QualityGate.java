@@ -0,0 +1,86 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Rejects the pictures whose quality is too low for the OCR to read them, before spending time on the OCR
+ */
+class QualityGate {
+
+    /**
+     * Reason of the verdict on a picture
+     */
+    enum Reason {
+        ACCEPTED("accepted"),
+        BLURRY("too blurry"),
+        UNDEREXPOSED("too dark"),
+        OVEREXPOSED("too bright"),
+        GLARE("too much glare");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return readable description of the reason
+         */
+        String getDescription() {
+            return description;
+        }
+    }
+
+    //default thresholds, variance of the Laplacian on the luminance plane of ImageQualityAnalyzer
+    static final double DEFAULT_MIN_SHARPNESS = 100;
+    static final double DEFAULT_MIN_LUMINANCE = 35;
+    static final double DEFAULT_MAX_LUMINANCE = 230;
+    static final double DEFAULT_MAX_HIGHLIGHTS = 0.2;
+
+    private final double minSharpness;
+    private final double minLuminance;
+    private final double maxLuminance;
+    private final double maxHighlights;
+
+    /**
+     * Gate with the default thresholds
+     */
+    QualityGate() {
+        this(DEFAULT_MIN_SHARPNESS, DEFAULT_MIN_LUMINANCE, DEFAULT_MAX_LUMINANCE, DEFAULT_MAX_HIGHLIGHTS);
+    }
+
+    /**
+     * @param minSharpness minimum sharpness (see ImageQuality.getSharpness())
+     * @param minLuminance minimum mean luminance
+     * @param maxLuminance maximum mean luminance
+     * @param maxHighlights maximum fraction of burnt out pixels
+     */
+    QualityGate(double minSharpness, double minLuminance, double maxLuminance, double maxHighlights) {
+        this.minSharpness = minSharpness;
+        this.minLuminance = minLuminance;
+        this.maxLuminance = maxLuminance;
+        this.maxHighlights = maxHighlights;
+    }
+
+    /**
+     * @param quality quality of the picture, null if it can't be measured: the picture is left to the OCR
+     * @return ACCEPTED if the picture can be read, otherwise the first reason why it can't.
+     * The exposure is checked before the blur, since a dark or burnt out picture has no edges
+     */
+    Reason check(ImageQuality quality) {
+        if(quality == null) {
+            return Reason.ACCEPTED;
+        }
+        if(quality.getMeanLuminance() < minLuminance) {
+            return Reason.UNDEREXPOSED;
+        }
+        if(quality.getMeanLuminance() > maxLuminance) {
+            return Reason.OVEREXPOSED;
+        }
+        if(quality.getHighlightFraction() > maxHighlights) {
+            return Reason.GLARE;
+        }
+        if(quality.getSharpness() < minSharpness) {
+            return Reason.BLURRY;
+        }
+        return Reason.ACCEPTED;
+    }
+}
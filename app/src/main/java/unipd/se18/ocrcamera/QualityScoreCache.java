@@ -0,0 +1,207 @@
+package unipd.se18.ocrcamera;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of the quality of the pictures measured by ImageQualityAnalyzer, used to open
+ * again a folder of pictures without decoding the pictures that didn't change.
+ * All the entries are stored in a single file, read once when the cache is created and written
+ * again by save(). A picture is identified by path, size and last modification time, and the file
+ * records the version of the analyzer: a changed picture or a new analyzer simply miss the cache.
+ * The entries of the pictures deleted are dropped when the cache is saved.
+ */
+class QualityScoreCache {
+
+    private static final String TAG = "QualityScoreCache";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Name of the cache file, stored in the folder of the pictures
+     */
+    static final String FILE_NAME = ".qualitycache";
+
+    private static final String SEPARATOR = "\t";
+    private static final int FIELDS = 7;
+
+    private final File file;
+    private final String version;
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private boolean changed = false;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Loads the entries stored by the same version of the analyzer
+     * @param file file of the cache, missing if the cache is empty
+     * @param version version of the analyzer producing the qualities
+     */
+    QualityScoreCache(File file, String version) {
+        this.file = file;
+        this.version = version;
+        if(file.isFile()) {
+            try {
+                load(new String(Utils.readFile(file), UTF_8));
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading " + file.getPath());
+            }
+        }
+    }
+
+    /**
+     * @param directory folder of the pictures, where the cache file is stored
+     * @return the cache of the pictures of the folder for the current analyzer
+     */
+    static QualityScoreCache forDirectory(File directory) {
+        return new QualityScoreCache(new File(directory, FILE_NAME), ImageQualityAnalyzer.VERSION);
+    }
+
+    /**
+     * @param picture the picture file
+     * @return the quality of the picture, null if not found or if the picture changed since it was measured
+     */
+    synchronized ImageQuality get(File picture) {
+        Entry entry = entries.get(picture.getAbsolutePath());
+        if(entry != null && entry.length == picture.length() && entry.lastModified == picture.lastModified()) {
+            hits.incrementAndGet();
+            return entry.quality;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param picture the picture file, not changed since the measure
+     * @param quality quality of the picture
+     */
+    synchronized void put(File picture, ImageQuality quality) {
+        entries.put(picture.getAbsolutePath(), new Entry(picture.length(), picture.lastModified(), quality));
+        changed = true;
+    }
+
+    /**
+     * Drops the entries of the pictures deleted, then writes the entries to the file if they changed,
+     * to a temporary file renamed so that the cache is never partial
+     */
+    synchronized void save() {
+        Iterator<String> paths = entries.keySet().iterator();
+        while(paths.hasNext()) {
+            if(!new File(paths.next()).isFile()) {
+                paths.remove();
+                changed = true;
+            }
+        }
+        if(!changed) {
+            return;
+        }
+        StringBuilder content = new StringBuilder(version).append('\n');
+        for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+            ImageQuality quality = entry.getValue().quality;
+            content.append(entry.getKey())
+                    .append(SEPARATOR).append(entry.getValue().length)
+                    .append(SEPARATOR).append(entry.getValue().lastModified)
+                    .append(SEPARATOR).append(quality.getSharpness())
+                    .append(SEPARATOR).append(quality.getMeanLuminance())
+                    .append(SEPARATOR).append(quality.getHighlightFraction())
+                    .append(SEPARATOR).append(quality.getShadowFraction())
+                    .append('\n');
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(tempFile);
+            stream.write(content.toString().getBytes(UTF_8));
+            stream.close();
+            stream = null;
+            if(!tempFile.renameTo(file)) {
+                Log.e(TAG, "Can't rename " + tempFile.getPath());
+                tempFile.delete();
+                return;
+            }
+            changed = false;
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing " + file.getPath());
+            tempFile.delete();
+        } finally {
+            if(stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of entries
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of qualities found since the creation of the cache
+     */
+    int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of qualities not found since the creation of the cache
+     */
+    int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Parses the content of the cache file: the version followed by a line for each picture.
+     * The whole cache is discarded if the version is different, malformed lines are skipped
+     */
+    private void load(String content) {
+        String[] lines = content.split("\n");
+        if(!lines[0].equals(version)) {
+            Log.i(TAG, "Cache of a different version, discarded");
+            return;
+        }
+        for(int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split(SEPARATOR);
+            if(fields.length != FIELDS) {
+                continue;
+            }
+            try {
+                ImageQuality quality = new ImageQuality(Double.parseDouble(fields[3]),
+                        Double.parseDouble(fields[4]), Double.parseDouble(fields[5]), Double.parseDouble(fields[6]));
+                entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), quality));
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "Malformed entry at line " + (i + 1));
+            }
+        }
+    }
+
+    /**
+     * Quality of a picture with the size and the modification time of the picture when it was measured
+     */
+    private static class Entry {
+        private final long length;
+        private final long lastModified;
+        private final ImageQuality quality;
+
+        Entry(long length, long lastModified, ImageQuality quality) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.quality = quality;
+        }
+    }
+}
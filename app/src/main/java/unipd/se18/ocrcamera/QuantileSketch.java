@@ -0,0 +1,116 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Fixed size histogram used to estimate the quantiles of a stream of values without storing them.
+ * The range of the values is divided into bins, linearly or logarithmically: the values outside
+ * the range are counted in the first or in the last bin, the quantiles are returned as the center
+ * of the bin where they fall.
+ */
+class QuantileSketch {
+
+    private final boolean logarithmic;
+    private final double min;
+    private final double binsPerUnit;
+    private final int[] counts;
+    private long total = 0;
+
+    private QuantileSketch(boolean logarithmic, double min, double binsPerUnit, int bins) {
+        this.logarithmic = logarithmic;
+        this.min = min;
+        this.binsPerUnit = binsPerUnit;
+        this.counts = new int[bins];
+    }
+
+    private QuantileSketch(QuantileSketch other) {
+        this.logarithmic = other.logarithmic;
+        this.min = other.min;
+        this.binsPerUnit = other.binsPerUnit;
+        this.counts = other.counts.clone();
+        this.total = other.total;
+    }
+
+    /**
+     * @param min lowest value of the range
+     * @param max highest value of the range
+     * @param bins number of bins of the same width, the quantiles have an error of at most half the width
+     * @return a sketch for values whose absolute error matters, like percentages
+     */
+    static QuantileSketch linear(double min, double max, int bins) {
+        return new QuantileSketch(false, min, bins / (max - min), bins);
+    }
+
+    /**
+     * @param min lowest value of the range, greater than 0
+     * @param max highest value of the range
+     * @param relativeError maximum error of the quantiles relative to their value, between 0 and 1
+     * @return a sketch for values whose relative error matters, like times
+     */
+    static QuantileSketch logarithmic(double min, double max, double relativeError) {
+        //each bin is (1 + relativeError)^2 times wider than the previous one
+        double binsPerUnit = 1 / (2 * Math.log1p(relativeError));
+        int bins = (int) Math.ceil(Math.log(max / min) * binsPerUnit) + 1;
+        return new QuantileSketch(true, min, binsPerUnit, bins);
+    }
+
+    /**
+     * @param value value to count, NaN is ignored
+     */
+    void add(double value) {
+        if(Double.isNaN(value)) {
+            return;
+        }
+        counts[binOf(value)]++;
+        total++;
+    }
+
+    /**
+     * @return number of values counted
+     */
+    long getCount() {
+        return total;
+    }
+
+    /**
+     * @param quantile quantile between 0 and 1, e.g. 0.9 for the 90th percentile
+     * @return estimate of the quantile, NaN if no value has been counted
+     */
+    double getQuantile(double quantile) {
+        if(total == 0) {
+            return Double.NaN;
+        }
+        //rank of the value, starting from 1
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        int bin = 0;
+        while(bin < counts.length - 1) {
+            seen += counts[bin];
+            if(seen >= rank) {
+                break;
+            }
+            bin++;
+        }
+        return centerOf(bin);
+    }
+
+    /**
+     * @return a copy that doesn't change when this sketch changes
+     */
+    QuantileSketch copy() {
+        return new QuantileSketch(this);
+    }
+
+    private int binOf(double value) {
+        double position = logarithmic
+                ? (value <= min ? 0 : Math.log(value / min) * binsPerUnit)
+                : (value - min) * binsPerUnit;
+        if(position <= 0) {
+            return 0;
+        }
+        return (int) Math.min(counts.length - 1, (long) position);
+    }
+
+    private double centerOf(int bin) {
+        double position = bin + 0.5;
+        return logarithmic ? min * Math.exp(position / binsPerUnit) : min + position / binsPerUnit;
+    }
+}
@@ -0,0 +1,147 @@
+package unipd.se18.ocrcamera;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.TreeMap;
+
+/**
+ * Writes the report of the tests to a file one record at a time, as soon as each test ends.
+ * The records are written in the order of their index (the order of the tests) whatever the order
+ * in which the tests end: a record ending early waits in memory only until the previous ones are written.
+ * The report is a JSON object with a field for each test: it's written to a temporary file
+ * that replaces the report only when commit() is called, if the run dies the temporary file
+ * still contains every record written until then.
+ * @author Luca Moroldo (g3)
+ */
+class ReportWriter implements Closeable {
+
+    private final File reportFile;
+    private final File tempFile;
+    private final FileOutputStream stream;
+    private final Writer writer;
+
+    //records ended before one of the previous ones, indexed by position
+    private final TreeMap<Integer, String> pending = new TreeMap<>();
+
+    //index of the next record to write
+    private int nextIndex = 0;
+    private int writtenRecords = 0;
+    private boolean committed = false;
+
+    /**
+     * Opens the temporary file of the report
+     * @param dirPath path to a directory with writing permissions
+     * @param fileName name of the report - will be overwritten on commit if already exist
+     * @throws IOException if the temporary file can't be opened
+     */
+    ReportWriter(String dirPath, String fileName) throws IOException {
+        reportFile = new File(dirPath, fileName);
+        tempFile = new File(dirPath, fileName + ".tmp");
+
+        stream = new FileOutputStream(tempFile);
+        writer = new BufferedWriter(new OutputStreamWriter(stream, Charset.forName("UTF-8")));
+        writer.write("{");
+        writer.flush();
+    }
+
+    /**
+     * Writes the record of a test, or keeps it until the previous records are written
+     * @param index position of the record in the report, each index must be used once
+     * @param name name of the record
+     * @param record content of the record
+     * @return number of records (written or skipped) that left the memory with this call
+     * @throws IOException if the record can't be written
+     */
+    synchronized int write(int index, String name, JSONObject record) throws IOException {
+        pending.put(index, JSONObject.quote(name) + ":" + record.toString());
+        return flushPending();
+    }
+
+    /**
+     * Marks a position of the report as without record, e.g. because the test failed
+     * @param index position of the missing record
+     * @return number of records (written or skipped) that left the memory with this call
+     * @throws IOException if the following records can't be written
+     */
+    synchronized int skip(int index) throws IOException {
+        pending.put(index, null);
+        return flushPending();
+    }
+
+    /**
+     * Writes the pending records that follow the last written one
+     * @return number of records removed from the pending ones
+     * @throws IOException if a record can't be written
+     */
+    private int flushPending() throws IOException {
+        int removed = 0;
+        while (!pending.isEmpty() && pending.firstKey() == nextIndex) {
+            String record = pending.remove(nextIndex);
+            if (record != null) {
+                if (writtenRecords > 0) {
+                    writer.write(",");
+                }
+                writer.write("\n");
+                writer.write(record);
+                writtenRecords++;
+            }
+            nextIndex++;
+            removed++;
+        }
+
+        //the records must reach the file before the next test ends
+        if (removed > 0) {
+            writer.flush();
+        }
+        return removed;
+    }
+
+    /**
+     * @return number of records written to the file
+     */
+    synchronized int getWrittenRecords() {
+        return writtenRecords;
+    }
+
+    /**
+     * Closes the report and replaces the previous one with it, only if every record has been written or skipped
+     * @param totalRecords number of records of the report
+     * @return the report file
+     * @throws IOException if the report is incomplete or can't be completed or renamed
+     */
+    synchronized File commit(int totalRecords) throws IOException {
+        if (!pending.isEmpty() || nextIndex != totalRecords) {
+            throw new IOException("Report incomplete, waiting for the record " + nextIndex + " of " + totalRecords);
+        }
+
+        writer.write("\n}");
+        writer.flush();
+        stream.getFD().sync();
+        writer.close();
+        committed = true;
+
+        if (!tempFile.renameTo(reportFile)) {
+            throw new IOException("Can't rename " + tempFile.getPath() + " to " + reportFile.getName());
+        }
+        return reportFile;
+    }
+
+    /**
+     * Closes the temporary file without replacing the report, does nothing after commit()
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!committed) {
+            writer.close();
+        }
+    }
+}
@@ -6,7 +6,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Environment;
@@ -23,11 +22,46 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+
 /**
  * Class used for showing the result of the OCR processing
  */
 public class ResultActivity extends AppCompatActivity {
 
+    /**
+     * Extra of the intent with the id in FrameStore of the photo captured, missing to show the last photo saved
+     */
+    static final String EXTRA_FRAME_ID = "frameId";
+
+    /**
+     * Extra of the intent with the path where the photo captured is being written, read only if the
+     * photo isn't in FrameStore. The file exists only once it has been completely written
+     */
+    static final String EXTRA_IMAGE_PATH = "imagePath";
+
+    private static final String OCR_CACHE_FILE_NAME = "perceptual_ocr_cache.json";
+    private static final int OCR_CACHE_CAPACITY = 32;
+
+    /**
+     * Texts of the last photos, shared by the activities so that a label photographed again is not recognized again
+     */
+    private static PerceptualOcrCache ocrCache;
+
+    /**
+     * Words of the ingredients, used to correct the words broken by the OCR
+     */
+    private static IngredientsDictionary ingredientsDictionary;
+
+    /**
+     * Id of the photo in FrameStore, whose reference handed over by CameraActivity is owned by the activity,
+     * -1 if the photo has been read from the file
+     */
+    private int frameId = -1;
+
     /**
      * The TextView of the extracted test from the captured photo.
      */
@@ -38,11 +72,18 @@ public class ResultActivity extends AppCompatActivity {
      */
     private Bitmap lastPhoto;
 
+    /**
+     * OCR of the activity, closed with the activity without closing the recognizer shared by the app
+     */
+    private TextExtractor ocr;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_result);
 
+        ocr = new TextExtractor(1);
+
         // UI components
         ImageView mImageView = findViewById(R.id.img_captured_view);
         mOCRTextView = findViewById(R.id.ocr_text_view);
@@ -62,10 +103,23 @@ public class ResultActivity extends AppCompatActivity {
         String pathImage = prefs.getString("imagePath", null);
         String OCRText = prefs.getString("text", null);
 
-        lastPhoto = BitmapFactory.decodeFile(pathImage);
+        //the photo just captured is in memory, unless the process has been recreated
+        int capturedFrameId = getIntent().getIntExtra(EXTRA_FRAME_ID, -1);
+        FrameStore.Frame frame = capturedFrameId < 0 ? null : FrameStore.get(capturedFrameId);
+        if (frame != null) {
+            frameId = capturedFrameId;
+            lastPhoto = CapturedImage.decode(frame);
+        } else {
+            //the file of the photo just captured may not have been written before the process ended,
+            //then nothing is shown rather than the previous photo
+            String capturedPath = getIntent().getStringExtra(EXTRA_IMAGE_PATH);
+            String path = capturedPath != null ? capturedPath : pathImage;
+            //decoded upright as given by the orientation recorded at capture time
+            lastPhoto = path == null || !new File(path).exists() ? null : CapturedImage.load(path, 0);
+        }
 
         if (lastPhoto != null) {
-            mImageView.setImageBitmap(Bitmap.createScaledBitmap(lastPhoto, lastPhoto.getWidth(), lastPhoto.getHeight(), false));
+            mImageView.setImageBitmap(lastPhoto);
         } else {
             Log.e("ResultActivity", "error retrieving last photo");
         }
@@ -86,6 +140,50 @@ public class ResultActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        ocr.close();
+        //the reference handed over by CameraActivity is kept while the activity is only recreated
+        if (frameId >= 0 && isFinishing()) {
+            FrameStore.release(frameId);
+        }
+    }
+
+    /**
+     * @return the cache of the texts, loaded from the cache directory the first time
+     */
+    private static synchronized PerceptualOcrCache getOcrCache(Context context) {
+        if (ocrCache == null) {
+            ocrCache = new PerceptualOcrCache(new File(context.getCacheDir(), OCR_CACHE_FILE_NAME),
+                    TextExtractor.VERSION + AdaptiveResolutionOcr.getPolicy(0), OCR_CACHE_CAPACITY);
+        }
+        return ocrCache;
+    }
+
+    /**
+     * @return the dictionary of the ingredients, loaded from the resources the first time,
+     * null if it can't be loaded
+     */
+    static synchronized IngredientsDictionary getIngredientsDictionary(Context context) {
+        if (ingredientsDictionary == null) {
+            InputStream stream = context.getResources().openRawResource(R.raw.inci_ingredients);
+            try {
+                ingredientsDictionary = IngredientsDictionary.load(stream);
+            } catch (IOException e) {
+                Log.e("ResultActivity", "Error loading the ingredients");
+                e.printStackTrace();
+            } finally {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return ingredientsDictionary;
+    }
+
     /**
      * Menu inflater
      * @author Francesco Pham
@@ -97,6 +195,14 @@ public class ResultActivity extends AppCompatActivity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        SharedPreferences prefs = getSharedPreferences("prefs", MODE_PRIVATE);
+        menu.findItem(R.id.record_sensor_trace)
+                .setChecked(prefs.getBoolean(CameraActivity.PREF_RECORD_SENSOR_TRACE, false));
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     /**
      * Handling click events on the menu
      * @author Francesco Pham
@@ -109,11 +215,52 @@ public class ResultActivity extends AppCompatActivity {
                 Intent i = new Intent(ResultActivity.this, TestResultActivity.class);
                 startActivity(i);
                 return true;
+            case R.id.test_without_duplicates:
+                Intent dedupIntent = new Intent(ResultActivity.this, TestResultActivity.class);
+                dedupIntent.putExtra(TestResultActivity.EXTRA_SKIP_DUPLICATES, true);
+                startActivity(dedupIntent);
+                return true;
+            case R.id.test_with_quality_gate:
+                Intent gateIntent = new Intent(ResultActivity.this, TestResultActivity.class);
+                gateIntent.putExtra(TestResultActivity.EXTRA_QUALITY_GATE, true);
+                startActivity(gateIntent);
+                return true;
+            case R.id.test_with_dictionary:
+                Intent dictionaryIntent = new Intent(ResultActivity.this, TestResultActivity.class);
+                dictionaryIntent.putExtra(TestResultActivity.EXTRA_INGREDIENTS_DICTIONARY, true);
+                startActivity(dictionaryIntent);
+                return true;
+            case R.id.test_full_resolution:
+                startTestAtResolution(1);
+                return true;
+            case R.id.test_half_resolution:
+                startTestAtResolution(2);
+                return true;
+            case R.id.test_quarter_resolution:
+                startTestAtResolution(4);
+                return true;
+            case R.id.record_sensor_trace:
+                //the camera records from its next start, and saves a trace each time it is paused
+                boolean record = !item.isChecked();
+                item.setChecked(record);
+                getSharedPreferences("prefs", MODE_PRIVATE).edit()
+                        .putBoolean(CameraActivity.PREF_RECORD_SENSOR_TRACE, record).apply();
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
     }
 
+    /**
+     * Runs the tests recognizing every picture at the same resolution, to compare the tiers
+     * @param factor downscale factor, one of AdaptiveResolutionOcr.DOWNSCALE_FACTORS
+     */
+    private void startTestAtResolution(int factor) {
+        Intent intent = new Intent(ResultActivity.this, TestResultActivity.class);
+        intent.putExtra(TestResultActivity.EXTRA_RESOLUTION_FACTOR, factor);
+        startActivity(intent);
+    }
+
     /**
      * Execute a task and post the result on the TextView given on construction
      * (g3) - modified by Rossi Leonardo
@@ -132,11 +279,33 @@ public class ResultActivity extends AppCompatActivity {
 
         @Override
         protected String doInBackground(Bitmap... bitmaps) {
-            TextExtractor ocr = new TextExtractor();
             String textRecognized = "";
             if(lastPhoto != null) {
-                textRecognized = ocr.getTextFromImg(lastPhoto);
-                if(textRecognized.equals(""))
+                //a photo too blurry, dark or bright is not worth the OCR
+                QualityGate.Reason rejection = new QualityGate().check(ImageQualityAnalyzer.analyze(lastPhoto));
+                if(rejection == QualityGate.Reason.ACCEPTED) {
+                    textRecognized = recognize(lastPhoto);
+                    IngredientsDictionary dictionary = getIngredientsDictionary(getApplicationContext());
+                    if(textRecognized == null) {
+                        textRecognized = getString(R.string.extraction_failed);
+                    } else if(dictionary != null) {
+                        textRecognized = dictionary.correctText(textRecognized);
+                        Log.i("ResultActivity", dictionary.getCorrections() + " words corrected, mean lookup "
+                                + dictionary.getMeanLookupMicros() + " us");
+                    }
+                }
+                if(rejection != QualityGate.Reason.ACCEPTED)
+                {
+                    textRecognized = getString(R.string.photo_rejected, rejection.getDescription());
+                    final String finalTextRecognized = textRecognized;
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            mOCRTextView.setText(finalTextRecognized);
+                        }
+                    });
+                }
+                else if(textRecognized.equals(""))
                 {
                     textRecognized = getString(R.string.no_text_found);
                     final String finalTextRecognized = textRecognized;
@@ -163,6 +332,40 @@ public class ResultActivity extends AppCompatActivity {
             return textRecognized;
         }
 
+        /**
+         * @param photo the photo accepted by the quality gate
+         * @return the text of the photo, taken from the cache if the same label has been photographed recently,
+         * null if the extraction fails
+         */
+        private String recognize(Bitmap photo) {
+            PerceptualOcrCache cache = getOcrCache(getApplicationContext());
+            LuminanceImage thumbnail = LuminanceImage.fromBitmap(photo, PerceptualOcrCache.KEY_WIDTH);
+            PerceptualOcrCache.Key key = thumbnail == null ? null : PerceptualOcrCache.getKey(thumbnail);
+            String text = key == null ? null : cache.get(key);
+            if(text != null) {
+                Log.i("ResultActivity", "Text found in the cache, hits " + cache.getHits() + " misses " + cache.getMisses());
+                return text;
+            }
+
+            //the photo is downscaled when its text is big enough
+            try {
+                text = OcrFuture.extract(new AdaptiveResolutionOcr(ocr), photo).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                Log.e("ResultActivity", "Error extracting the text");
+                e.printStackTrace();
+                return null;
+            }
+            //only a text actually recognized is cached, a failed extraction is tried again the next time
+            if(key != null) {
+                cache.put(key, text);
+                cache.save();
+            }
+            return text;
+        }
+
         @Override
         protected void onPostExecute(String s) {
             progressDialog.dismiss();
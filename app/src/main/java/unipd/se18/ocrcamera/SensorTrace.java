@@ -0,0 +1,140 @@
+package unipd.se18.ocrcamera;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Readings of the sensors of the phone, recorded by DeviceOrientation to be replayed on the JVM
+ * (see SensorTraceReplay) and tune the orientation logic without holding a phone.
+ * The readings are kept in arrays growing as needed, and written to a compact binary file: a header
+ * followed by 17 bytes for each reading (type of sensor, microseconds since the previous reading
+ * and the three values).
+ */
+class SensorTrace {
+
+    /**
+     * Types of the sensors recorded, the same values of Sensor.TYPE_ACCELEROMETER and
+     * Sensor.TYPE_MAGNETIC_FIELD, so that the traces can be read without Android
+     */
+    static final int TYPE_ACCELEROMETER = 1;
+    static final int TYPE_MAGNETIC_FIELD = 2;
+
+    //first bytes of a trace file, "OCST"
+    private static final int MAGIC = 0x4f435354;
+    private static final int FORMAT_VERSION = 1;
+
+    private byte[] types = new byte[256];
+    private long[] timestamps = new long[256];
+    private float[] values = new float[3 * 256];
+    private int size = 0;
+
+    /**
+     * @param sensorType type of the sensor, as Sensor.TYPE_ACCELEROMETER
+     * @param timestamp time of the reading in nanoseconds, not less than the previous one
+     * @param x first value of the reading
+     * @param y second value of the reading
+     * @param z third value of the reading
+     */
+    synchronized void add(int sensorType, long timestamp, float x, float y, float z) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            values = Arrays.copyOf(values, 3 * size * 2);
+        }
+        types[size] = (byte) sensorType;
+        timestamps[size] = timestamp;
+        values[3 * size] = x;
+        values[3 * size + 1] = y;
+        values[3 * size + 2] = z;
+        size++;
+    }
+
+    /**
+     * @return number of readings
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param index position of the reading
+     * @return type of the sensor of the reading
+     */
+    synchronized int getSensorType(int index) {
+        return types[index];
+    }
+
+    /**
+     * @param index position of the reading
+     * @return time of the reading in nanoseconds, with the precision of a microsecond after a write
+     */
+    synchronized long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * @param index position of the reading
+     * @param axis 0, 1 or 2
+     * @return value of the reading along the axis
+     */
+    synchronized float getValue(int index, int axis) {
+        return values[3 * index + axis];
+    }
+
+    /**
+     * Writes the trace, the stream is not closed
+     * @param output stream where the trace is written
+     * @throws IOException if the trace can't be written
+     */
+    synchronized void write(OutputStream output) throws IOException {
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(output));
+        stream.writeInt(MAGIC);
+        stream.writeInt(FORMAT_VERSION);
+        stream.writeInt(size);
+        stream.writeLong(size > 0 ? timestamps[0] : 0);
+        long previous = size > 0 ? timestamps[0] : 0;
+        for (int i = 0; i < size; i++) {
+            //the readings come a few milliseconds apart, an int of microseconds is enough
+            long delta = (timestamps[i] - previous) / 1000;
+            previous += delta * 1000;
+            stream.writeByte(types[i]);
+            stream.writeInt((int) Math.min(Integer.MAX_VALUE, delta));
+            stream.writeFloat(values[3 * i]);
+            stream.writeFloat(values[3 * i + 1]);
+            stream.writeFloat(values[3 * i + 2]);
+        }
+        stream.flush();
+    }
+
+    /**
+     * @param input stream of a trace written by write(), not closed
+     * @return the trace read
+     * @throws IOException if the stream can't be read or is not a trace
+     */
+    static SensorTrace read(InputStream input) throws IOException {
+        DataInputStream stream = new DataInputStream(new BufferedInputStream(input));
+        if (stream.readInt() != MAGIC) {
+            throw new IOException("Not a sensor trace");
+        }
+        int version = stream.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported sensor trace version " + version);
+        }
+        int count = stream.readInt();
+        long timestamp = stream.readLong();
+
+        SensorTrace trace = new SensorTrace();
+        for (int i = 0; i < count; i++) {
+            int type = stream.readByte();
+            timestamp += stream.readInt() * 1000L;
+            trace.add(type, timestamp, stream.readFloat(), stream.readFloat(), stream.readFloat());
+        }
+        return trace;
+    }
+}
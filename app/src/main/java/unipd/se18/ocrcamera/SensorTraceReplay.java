@@ -0,0 +1,195 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Replays the accelerometer readings of a SensorTrace into an OrientationFilter and measures how well
+ * it follows the phone:
+ * - the latency, number of readings from a turn of the phone to the change of the rotation,
+ *   where a turn is a change of the rotation given by the last reading alone that lasts at least
+ *   STABLE_READINGS readings
+ * - the flip-flops, changes of the rotation undone within FLIP_FLOP_READINGS readings
+ * - the CPU time spent by the filter for each reading
+ */
+final class SensorTraceReplay {
+
+    /**
+     * Readings the rotation given by a single reading must last to be a turn of the phone
+     */
+    static final int STABLE_READINGS = 10;
+
+    /**
+     * Maximum readings between a change of the rotation and the one undoing it to be a flip-flop
+     */
+    static final int FLIP_FLOP_READINGS = 25;
+
+    private final int readings;
+    private final int turns;
+    private final int missedTurns;
+    private final int totalLatency;
+    private final int maxLatency;
+    private final int rotationChanges;
+    private final int flipFlops;
+    private final long filterNanos;
+
+    private SensorTraceReplay(int readings, int turns, int missedTurns, int totalLatency, int maxLatency,
+                              int rotationChanges, int flipFlops, long filterNanos) {
+        this.readings = readings;
+        this.turns = turns;
+        this.missedTurns = missedTurns;
+        this.totalLatency = totalLatency;
+        this.maxLatency = maxLatency;
+        this.rotationChanges = rotationChanges;
+        this.flipFlops = flipFlops;
+        this.filterNanos = filterNanos;
+    }
+
+    /**
+     * @param trace the readings of the phone
+     * @param filter a new filter, tuned as it should be evaluated
+     * @return the measures of the filter on the trace
+     */
+    static SensorTraceReplay replay(SensorTrace trace, OrientationFilter filter) {
+        int count = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.getSensorType(i) == SensorTrace.TYPE_ACCELEROMETER) {
+                count++;
+            }
+        }
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        float[] zs = new float[count];
+        int k = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.getSensorType(i) == SensorTrace.TYPE_ACCELEROMETER) {
+                xs[k] = trace.getValue(i, 0);
+                ys[k] = trace.getValue(i, 1);
+                zs[k] = trace.getValue(i, 2);
+                k++;
+            }
+        }
+
+        //rotation given by each reading alone, without smoothing nor hysteresis
+        OrientationFilter instant = new OrientationFilter(1, 0);
+        int[] references = new int[count];
+        for (int i = 0; i < count; i++) {
+            references[i] = instant.onAcceleration(xs[i], ys[i], zs[i]);
+        }
+
+        //only the filter is timed
+        int[] rotations = new int[count];
+        long started = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            rotations[i] = filter.onAcceleration(xs[i], ys[i], zs[i]);
+        }
+        long filterNanos = System.nanoTime() - started;
+
+        int turns = 0;
+        int missedTurns = 0;
+        int totalLatency = 0;
+        int maxLatency = 0;
+        for (int i = 1; i < count; i++) {
+            if (references[i] == references[i - 1] || references[i] == OrientationFilter.ROTATION_UNKNOWN) {
+                continue;
+            }
+            int end = i;
+            while (end < count && references[end] == references[i]) {
+                end++;
+            }
+            if (end - i < STABLE_READINGS) {
+                continue;
+            }
+            turns++;
+            int j = i;
+            while (j < end && rotations[j] != references[i]) {
+                j++;
+            }
+            if (j == end) {
+                missedTurns++;
+            } else {
+                totalLatency += j - i;
+                maxLatency = Math.max(maxLatency, j - i);
+            }
+        }
+
+        int rotationChanges = 0;
+        int flipFlops = 0;
+        int lastChange = -1;
+        for (int i = 1; i < count; i++) {
+            if (rotations[i] == rotations[i - 1] || rotations[i - 1] == OrientationFilter.ROTATION_UNKNOWN) {
+                continue;
+            }
+            rotationChanges++;
+            //back to the rotation before the last change, shortly after it
+            if (lastChange > 0 && i - lastChange <= FLIP_FLOP_READINGS && rotations[i] == rotations[lastChange - 1]) {
+                flipFlops++;
+            }
+            lastChange = i;
+        }
+
+        return new SensorTraceReplay(count, turns, missedTurns, totalLatency, maxLatency,
+                rotationChanges, flipFlops, filterNanos);
+    }
+
+    /**
+     * @return number of accelerometer readings replayed
+     */
+    int getReadings() {
+        return readings;
+    }
+
+    /**
+     * @return number of turns of the phone
+     */
+    int getTurns() {
+        return turns;
+    }
+
+    /**
+     * @return number of turns the filter didn't follow before the phone turned again
+     */
+    int getMissedTurns() {
+        return missedTurns;
+    }
+
+    /**
+     * @return average number of readings from a turn to the change of the rotation, 0 without turns followed
+     */
+    double getMeanLatency() {
+        int followed = turns - missedTurns;
+        return followed == 0 ? 0 : (double) totalLatency / followed;
+    }
+
+    /**
+     * @return maximum number of readings from a turn to the change of the rotation
+     */
+    int getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * @return number of changes of the rotation given by the filter
+     */
+    int getRotationChanges() {
+        return rotationChanges;
+    }
+
+    /**
+     * @return number of changes of the rotation undone shortly after
+     */
+    int getFlipFlops() {
+        return flipFlops;
+    }
+
+    /**
+     * @return CPU time spent by the filter for each reading in nanoseconds, 0 without readings
+     */
+    double getNanosPerReading() {
+        return readings == 0 ? 0 : (double) filterNanos / readings;
+    }
+
+    @Override
+    public String toString() {
+        return readings + " readings, " + turns + " turns (" + missedTurns + " missed), latency mean "
+                + getMeanLatency() + " max " + maxLatency + " readings, " + rotationChanges + " changes, "
+                + flipFlops + " flip-flops, " + Math.round(getNanosPerReading()) + " ns per reading";
+    }
+}
@@ -0,0 +1,208 @@
+package unipd.se18.ocrcamera;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OCR engine that doesn't look at the pixels: it returns the correct text of the image with some
+ * errors typical of an OCR (confused characters, words split or lost) after a random latency.
+ * Errors and latency depend only on the seed and on the text, so a run can be repeated exactly.
+ * Used to measure the throughput of the tests (scheduling, scoring and report) without the real OCR.
+ */
+class SimulatedOcr implements OCRInterface {
+
+    private static final String TAG = "SimulatedOcr";
+
+    //characters the OCR confuses, each with the one it's replaced by
+    private static final String CONFUSED = "ilIoOcerntuvS";
+    private static final String CONFUSIONS = "lIl00ecnrfvu5";
+
+    /**
+     * Gives the correct text of an image
+     */
+    interface TextSource {
+        /**
+         * @param img the image
+         * @return the text in the image
+         */
+        String getGroundTruth(Bitmap img);
+    }
+
+    private final long seed;
+    private final TextSource source;
+
+    //probabilities of the errors
+    private double substitutionRate = 0;
+    private double splitRate = 0;
+    private double dropWordRate = 0;
+
+    //latency: log-normal distribution with the given median, spread is the standard deviation of its logarithm
+    private long medianLatency = 0;
+    private double latencySpread = 0;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates an engine without errors and latency
+     * @param seed seed of the errors and of the latency
+     * @param source gives the text of the images passed to getTextFromImg(), can be null if only recognize() is used
+     */
+    SimulatedOcr(long seed, TextSource source) {
+        this.seed = seed;
+        this.source = source;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SimulatedOcr");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param substitutionRate probability of each character to be confused with a similar one
+     * @param splitRate probability of a space inserted before each character inside a word
+     * @param dropWordRate probability of each word to be lost
+     */
+    void setNoise(double substitutionRate, double splitRate, double dropWordRate) {
+        this.substitutionRate = substitutionRate;
+        this.splitRate = splitRate;
+        this.dropWordRate = dropWordRate;
+    }
+
+    /**
+     * @param medianLatency median time of an extraction in milliseconds, 0 to answer immediately
+     * @param spread spread of the latency, 0 for a constant latency, 0.5 for a realistic long tail
+     */
+    void setLatency(long medianLatency, double spread) {
+        this.medianLatency = medianLatency;
+        this.latencySpread = spread;
+    }
+
+    @Override
+    public String getTextFromImg(Bitmap img) {
+        try {
+            return OcrFuture.extract(this, img).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXTRACTION_FAILED;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "getTextFromImg -> " + e.getCause());
+            return EXTRACTION_FAILED;
+        }
+    }
+
+    @Override
+    public void getTextFromImg(Bitmap img, OCRListener listener) {
+        if(source == null) {
+            listener.onTextRecognitionFailed(new IllegalStateException("No source of the texts"));
+            return;
+        }
+        recognize(source.getGroundTruth(img), listener);
+    }
+
+    /**
+     * Simulates the extraction of a text
+     * @param groundTruth the correct text of the image
+     * @param listener receives the text with errors after the latency, on a background thread if the latency isn't 0
+     */
+    void recognize(String groundTruth, final OCRListener listener) {
+        Random random = randomFor(groundTruth);
+        final String text = addNoise(groundTruth, random);
+        long latency = sampleLatency(random);
+
+        if(latency <= 0) {
+            listener.onTextRecognized(text);
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                listener.onTextRecognized(text);
+            }
+        }, latency, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param groundTruth the correct text
+     * @return the text as recognized by this engine, always the same for the same text
+     */
+    String getNoisyText(String groundTruth) {
+        return addNoise(groundTruth, randomFor(groundTruth));
+    }
+
+    /**
+     * @param groundTruth the correct text
+     * @return the latency of the extraction of the text in milliseconds, always the same for the same text
+     */
+    long getLatency(String groundTruth) {
+        Random random = randomFor(groundTruth);
+        addNoise(groundTruth, random);
+        return sampleLatency(random);
+    }
+
+    @Override
+    public String getVersion() {
+        return "simulated seed=" + seed + " noise=" + substitutionRate + "/" + splitRate + "/" + dropWordRate;
+    }
+
+    /**
+     * Stops the scheduler, the extractions not yet notified are lost
+     */
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    private Random randomFor(String text) {
+        return new Random(seed * 31 + text.hashCode());
+    }
+
+    private String addNoise(String text, Random random) {
+        StringBuilder noisy = new StringBuilder(text.length());
+        boolean wordStart = true;
+        boolean dropping = false;
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(Character.isWhitespace(c) || c == ',') {
+                wordStart = true;
+                dropping = false;
+                noisy.append(c);
+                continue;
+            }
+            if(wordStart) {
+                wordStart = false;
+                dropping = random.nextDouble() < dropWordRate;
+            } else if(!dropping && random.nextDouble() < splitRate) {
+                noisy.append(' ');
+            }
+            if(dropping) {
+                continue;
+            }
+
+            int confused = CONFUSED.indexOf(c);
+            if(confused >= 0 && random.nextDouble() < substitutionRate) {
+                noisy.append(CONFUSIONS.charAt(confused));
+            } else {
+                noisy.append(c);
+            }
+        }
+        return noisy.toString();
+    }
+
+    private long sampleLatency(Random random) {
+        if(medianLatency <= 0) {
+            return 0;
+        }
+        return Math.round(medianLatency * Math.exp(latencySpread * random.nextGaussian()));
+    }
+}
@@ -0,0 +1,47 @@
+package unipd.se18.ocrcamera;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Dictionary of the tags of the tests: each distinct tag is stored once and identified by a small
+ * integer, so that the tests keep only the ids and the statistics can use arrays indexed by id.
+ * The ids are assigned in order of appearance starting from 0 and are never reused.
+ */
+final class TagDictionary {
+
+    private static final HashMap<String, Integer> ids = new HashMap<>();
+    private static final ArrayList<String> names = new ArrayList<>();
+
+    private TagDictionary() {
+    }
+
+    /**
+     * @param name name of the tag
+     * @return id of the tag, assigned if the tag is new
+     */
+    static synchronized int getId(String name) {
+        Integer id = ids.get(name);
+        if(id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * @param id id returned by getId()
+     * @return name of the tag
+     */
+    static synchronized String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * @return number of tags, every id is lower than this value
+     */
+    static synchronized int size() {
+        return names.size();
+    }
+}
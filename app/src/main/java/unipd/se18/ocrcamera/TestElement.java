@@ -2,24 +2,63 @@ package unipd.se18.ocrcamera;
 
 import android.graphics.Bitmap;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
- * Class that contains a single test element, used in PhotoTester to build a single test and on AdapterTestElement to show data in a listview
+ * Class that contains a single test element, used in PhotoTester to build a single test and on AdapterTestElement to show data in a listview.
+ * The description of the test is parsed once when the element is created, the JSON is built again only for the report
+ * from the original description, so the keys not known by this class are kept.
  * @author Luca Moroldo, Francesco Pham
  */
 
 public class TestElement {
 
-    private Bitmap picture;
-    private JSONObject jsonObject;
+    //the picture is decoded only when needed, so that the pixels of all the tests are never in memory together
+    private String picturePath;
     private String fileName;
 
-    public TestElement(Bitmap picture, JSONObject jsonObject, String fileName) {
-        this.picture = picture;
-        this.jsonObject = jsonObject;
+    //original description, never modified, the results are written on a copy of it
+    private JSONObject description;
+
+    //description of the test, null if missing (the tags are empty instead)
+    private String ingredients;
+    private int[] tagIds = new int[0];
+    private String notes;
+    private String originalName;
+
+    //results of the test
+    private float confidence = 0;
+    private String recognizedText = null;
+    private String qualityRejection = null;
+
+    /**
+     * @param picturePath path of the picture of the test
+     * @param jsonObject description of the test, kept by the element so it must not be modified later
+     * @param fileName name of the test files without extension
+     */
+    public TestElement(String picturePath, JSONObject jsonObject, String fileName) {
+        this.picturePath = picturePath;
         this.fileName = fileName;
+        this.description = jsonObject;
+
+        ingredients = jsonObject.has("ingredients") ? jsonObject.optString("ingredients") : null;
+        notes = jsonObject.has("notes") ? jsonObject.optString("notes") : null;
+        originalName = jsonObject.has("original_name") ? jsonObject.optString("original_name") : null;
+
+        JSONArray tags = jsonObject.optJSONArray("tags");
+        if(tags != null) {
+            tagIds = new int[tags.length()];
+            for (int i = 0; i < tags.length(); i++) {
+                tagIds[i] = TagDictionary.getId(tags.optString(i));
+            }
+        }
+
+        //results of a previous test
+        confidence = (float) jsonObject.optDouble("confidence", 0);
+        recognizedText = jsonObject.has("extracted_text") ? jsonObject.optString("extracted_text") : null;
+        qualityRejection = jsonObject.has("quality_rejection") ? jsonObject.optString("quality_rejection") : null;
     }
 
     public String[] getIngredientsArray() throws JSONException {
@@ -29,16 +68,48 @@ public class TestElement {
     }
 
     public String getIngredients() throws  JSONException {
-        String ingredients = jsonObject.getString("ingredients");
+        if(ingredients == null)
+            throw new JSONException("No value for ingredients");
         return ingredients;
     }
 
     public String[] getTags() throws JSONException {
-        return Utils.getStringArrayFromJSON(jsonObject, "tags");
+        int[] ids = getTagIds();
+        String[] tags = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            tags[i] = TagDictionary.getName(ids[i]);
+        }
+        return tags;
     }
 
+    /**
+     * @return ids of the tags given by TagDictionary, empty if the description has no tags,
+     * the array must not be modified
+     * @throws JSONException
+     */
+    public int[] getTagIds() throws JSONException {
+        return tagIds;
+    }
+
+    /**
+     * Decodes the picture at full resolution, the caller should drop (or recycle) it when done
+     * @return the picture of the test, null if it can't be decoded
+     */
     public Bitmap getPicture() {
-        return picture;
+        return Utils.loadBitmapFromFile(picturePath);
+    }
+
+    /**
+     * Decodes a subsampled version of the picture, useful for previews
+     * @param reqWidth width needed, the picture is subsampled as long as it stays at least this wide
+     * @return the picture of the test, null if it can't be decoded
+     */
+    public Bitmap getPicture(int reqWidth) {
+        return Utils.loadBitmapFromFile(picturePath, reqWidth);
+    }
+
+    public String getPicturePath() {
+        return picturePath;
     }
 
     public String getFileName() {
@@ -46,7 +117,9 @@ public class TestElement {
     }
 
     public String getNotes() throws JSONException {
-        return jsonObject.getString("notes");
+        if(notes == null)
+            throw new JSONException("No value for notes");
+        return notes;
     }
 
     /**
@@ -54,11 +127,7 @@ public class TestElement {
      * @throws JSONException
      */
     public float getConfidence() throws JSONException {
-        String confidence = jsonObject.getString("confidence");
-        if(confidence != null)
-            return Float.parseFloat(confidence);
-        else
-            return 0;
+        return confidence;
     }
 
     /**
@@ -67,25 +136,53 @@ public class TestElement {
      * @throws JSONException
      */
     public String getRecognizedText() throws  JSONException {
-        String recognizedText = jsonObject.getString("extracted_text");
         if(recognizedText != null)
             return recognizedText;
         return "";
     }
 
-    public JSONObject getJsonObject() {
+    /**
+     * @return why QualityGate rejected the picture before the OCR, null if it wasn't rejected
+     */
+    public String getQualityRejection() {
+        return qualityRejection;
+    }
+
+    /**
+     * Builds the JSON of the test, as written in the report: the original description with the results
+     * @return a new JSON object, changes don't affect the test
+     * @throws JSONException
+     */
+    public JSONObject getJsonObject() throws JSONException {
+        JSONObject jsonObject = new JSONObject(description.toString());
+        jsonObject.put("confidence", confidence);
+        //the results may have been changed since the description was written
+        jsonObject.remove("extracted_text");
+        if(recognizedText != null)
+            jsonObject.put("extracted_text", recognizedText);
+        jsonObject.remove("quality_rejection");
+        if(qualityRejection != null)
+            jsonObject.put("quality_rejection", qualityRejection);
         return jsonObject;
     }
 
     public void setConfidence(float confidence) throws JSONException {
-        jsonObject.put("confidence", confidence);
+        this.confidence = confidence;
     }
     public void setRecognizedText(String text) throws JSONException {
-        jsonObject.put("extracted_text", text);
+        this.recognizedText = text;
+    }
+    public void setQualityRejection(String reason) {
+        this.qualityRejection = reason;
     }
 
     @Override
     public String toString() {
-        return jsonObject.toString();
+        try {
+            return getJsonObject().toString();
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return fileName;
+        }
     }
 }
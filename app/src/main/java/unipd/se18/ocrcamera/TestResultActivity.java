@@ -17,8 +17,6 @@ import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.json.JSONException;
-
 import java.io.File;
 
 /**
@@ -29,6 +27,40 @@ public class TestResultActivity extends AppCompatActivity {
     private static final String TAG = "TestResultActivity";
     private static final int MY_READ_EXTERNAL_STORAGE_REQUEST_CODE = 300;
 
+    /**
+     * Boolean extra of the intent, true to test only one picture of each group of near-duplicates
+     * and list the groups found
+     */
+    static final String EXTRA_SKIP_DUPLICATES = "skipDuplicates";
+
+    /**
+     * Int extra of the intent, downscale factor used for every picture (one of
+     * AdaptiveResolutionOcr.DOWNSCALE_FACTORS), missing or 0 to choose it for each picture
+     */
+    static final String EXTRA_RESOLUTION_FACTOR = "resolutionFactor";
+
+    /**
+     * Boolean extra of the intent, true to skip the OCR of the pictures too blurry, dark or bright
+     * and count them in the statistics
+     */
+    static final String EXTRA_QUALITY_GATE = "qualityGate";
+
+    /**
+     * Boolean extra of the intent, true to correct the extracted texts with the ingredients dictionary
+     * before comparing them with the correct ingredients
+     */
+    static final String EXTRA_INGREDIENTS_DICTIONARY = "ingredientsDictionary";
+
+    /**
+     * Number of pairs of tags shown in the statistics, the ones found together in the most tests
+     */
+    private static final int MAX_TAG_PAIRS = 10;
+
+    /**
+     * Adapter of the list of the tests, null until the tests end
+     */
+    private AdapterTestElement adapter;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -48,13 +80,25 @@ public class TestResultActivity extends AppCompatActivity {
         AsyncReport report = new AsyncReport(listEntriesView,
                 Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES),
                 "OCRCameraDB",
-                getString(R.string.processing));
+                getString(R.string.processing),
+                getIntent().getBooleanExtra(EXTRA_SKIP_DUPLICATES, false),
+                getIntent().getIntExtra(EXTRA_RESOLUTION_FACTOR, 0),
+                getIntent().getBooleanExtra(EXTRA_QUALITY_GATE, false),
+                getIntent().getBooleanExtra(EXTRA_INGREDIENTS_DICTIONARY, false));
         report.execute();
 
 
     }
 
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (adapter != null) {
+            adapter.close();
+        }
+    }
+
     //TODO fix select folder dialog
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
@@ -70,7 +114,7 @@ public class TestResultActivity extends AppCompatActivity {
     }
 
     /**
-     * Execute the ocr task for every pics and store the report in a String
+     * Execute the ocr task for every pics and store the report in a file
      * Luca Moroldo (g3) - Pietro Prandini (g2)
      */
     @SuppressLint("StaticFieldLeak")
@@ -82,13 +126,24 @@ public class TestResultActivity extends AppCompatActivity {
         private String progressMessage;
         private ProgressDialog progressDialog;
         private PhotoTester tester;
-        private String report;
-
-        AsyncReport(ListView listEntriesView,File environment, String dirName, String progressMessage) {
+        private File report;
+        private boolean skipDuplicates;
+        private int resolutionFactor;
+        private boolean qualityGate;
+        private boolean correctIngredients;
+        private String duplicatesText = "";
+
+        AsyncReport(ListView listEntriesView,File environment, String dirName, String progressMessage,
+                    boolean skipDuplicates, int resolutionFactor, boolean qualityGate,
+                    boolean correctIngredients) {
             this.listEntriesView = listEntriesView;
             this.environment = environment;
             this.dirName = dirName;
             this.progressMessage = progressMessage;
+            this.skipDuplicates = skipDuplicates;
+            this.resolutionFactor = resolutionFactor;
+            this.qualityGate = qualityGate;
+            this.correctIngredients = correctIngredients;
         }
 
         @Override
@@ -101,12 +156,27 @@ public class TestResultActivity extends AppCompatActivity {
                 }
             });
             this.tester = new PhotoTester(environment,dirName);
+            if (skipDuplicates) {
+                tester.setDeduplication(DuplicateFinder.DEFAULT_MAX_DISTANCE);
+            }
+            tester.setResolutionFactor(resolutionFactor);
+            if (qualityGate) {
+                tester.setQualityGate(new QualityGate());
+            }
+            if (correctIngredients) {
+                //the dictionary loaded for the photos taken is reused
+                tester.setIngredientsDictionary(ResultActivity.getIngredientsDictionary(getApplicationContext()));
+            }
             report = tester.testAndReport();
+            if (skipDuplicates) {
+                //the hashes computed to skip the near-duplicates are reused, no picture is decoded again
+                duplicatesText = tester.getDuplicatesString(DuplicateFinder.DEFAULT_MAX_DISTANCE);
+            }
 
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    AdapterTestElement adapter = new AdapterTestElement(TestResultActivity.this, tester.getTestElements());
+                    adapter = new AdapterTestElement(TestResultActivity.this, tester.getTestElements());
                     listEntriesView.setAdapter(adapter);
                 }
             });
@@ -119,12 +189,11 @@ public class TestResultActivity extends AppCompatActivity {
 
             //add statistics author: Francesco Pham
             TextView statsView = new TextView(TestResultActivity.this);
-            String statsText = "";
-            try {
-                statsText = tester.getTagsStatsString();
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
+            String statsText = tester.getTagsStatsString() + "\n" + tester.getTagPairsStatsString(MAX_TAG_PAIRS)
+                    + "\n" + tester.getResolutionStatsString()
+                    + "\n" + tester.getQualityStatsString()
+                    + "\n" + tester.getDictionaryStatsString()
+                    + "\n" + duplicatesText;
             statsView.setText(statsText);
             listEntriesView.addHeaderView(statsView);
         }
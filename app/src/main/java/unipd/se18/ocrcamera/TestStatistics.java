@@ -0,0 +1,276 @@
+package unipd.se18.ocrcamera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of the tests, updated as each test ends so that they are ready as soon as the tests
+ * are done. The tests are grouped by tag and by pair of tags (the tests having both tags); for
+ * each group the confidence and the OCR time are summarized by count, mean, standard deviation,
+ * min, max and percentiles, in a fixed amount of memory whatever the number of tests.
+ * The methods can be called by different threads.
+ */
+class TestStatistics {
+
+    //resolution of the percentiles of the confidence, in percentage points
+    private static final int CONFIDENCE_BINS = 200;
+
+    //range and relative resolution of the percentiles of the OCR time, in milliseconds
+    private static final double MIN_OCR_TIME = 1;
+    private static final double MAX_OCR_TIME = 10 * 60 * 1000;
+    private static final double OCR_TIME_ERROR = 0.025;
+
+    private final Group total = new Group();
+
+    //groups of the tags, indexed by tag id (see TagDictionary), null if no test has the tag
+    private final ArrayList<Group> tagGroups = new ArrayList<>();
+
+    //groups of the pairs of tags, indexed by pairKey()
+    private final HashMap<Long, Group> tagPairGroups = new HashMap<>();
+
+    /**
+     * Adds the results of a test
+     * @param tagIds ids of the tags of the test
+     * @param confidence confidence of the test
+     * @param ocrTime time spent by the OCR in milliseconds, negative if the OCR didn't run (e.g. the text was cached)
+     */
+    synchronized void add(int[] tagIds, float confidence, long ocrTime) {
+        total.add(confidence, ocrTime);
+        for(int i = 0; i < tagIds.length; i++) {
+            int tagId = tagIds[i];
+            while(tagGroups.size() <= tagId) {
+                tagGroups.add(null);
+            }
+            Group group = tagGroups.get(tagId);
+            if(group == null) {
+                group = new Group();
+                tagGroups.set(tagId, group);
+            }
+            group.add(confidence, ocrTime);
+
+            for(int j = i + 1; j < tagIds.length; j++) {
+                if(tagIds[j] == tagId) {
+                    continue;
+                }
+                long key = pairKey(tagId, tagIds[j]);
+                Group pair = tagPairGroups.get(key);
+                if(pair == null) {
+                    pair = new Group();
+                    tagPairGroups.put(key, pair);
+                }
+                pair.add(confidence, ocrTime);
+            }
+        }
+    }
+
+    /**
+     * @return statistics of all the tests
+     */
+    synchronized Group getTotal() {
+        return total.copy();
+    }
+
+    /**
+     * @return ids of the tags of at least one test, in ascending order
+     */
+    synchronized int[] getTagIds() {
+        int count = 0;
+        for(Group group : tagGroups) {
+            if(group != null) {
+                count++;
+            }
+        }
+        int[] ids = new int[count];
+        count = 0;
+        for(int tagId = 0; tagId < tagGroups.size(); tagId++) {
+            if(tagGroups.get(tagId) != null) {
+                ids[count++] = tagId;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @param tagId id of the tag
+     * @return statistics of the tests with the tag, null if there is no such test
+     */
+    synchronized Group getTagGroup(int tagId) {
+        Group group = tagId < tagGroups.size() ? tagGroups.get(tagId) : null;
+        return group != null ? group.copy() : null;
+    }
+
+    /**
+     * @param tagId1 id of a tag
+     * @param tagId2 id of another tag
+     * @return statistics of the tests with both tags, null if there is no such test
+     */
+    synchronized Group getTagPairGroup(int tagId1, int tagId2) {
+        Group group = tagPairGroups.get(pairKey(tagId1, tagId2));
+        return group != null ? group.copy() : null;
+    }
+
+    /**
+     * @param maxPairs maximum number of pairs returned
+     * @return the pairs of tags of the most tests, each as the ids of its two tags, from the most frequent
+     */
+    synchronized List<int[]> getTagPairs(int maxPairs) {
+        List<Map.Entry<Long, Group>> pairs = new ArrayList<>(tagPairGroups.entrySet());
+        Collections.sort(pairs, new Comparator<Map.Entry<Long, Group>>() {
+            @Override
+            public int compare(Map.Entry<Long, Group> pair1, Map.Entry<Long, Group> pair2) {
+                int byCount = Long.compare(pair2.getValue().confidence.getCount(), pair1.getValue().confidence.getCount());
+                //ties in the order of the tags, so that the order is always the same
+                return byCount != 0 ? byCount : Long.compare(pair1.getKey(), pair2.getKey());
+            }
+        });
+        List<int[]> mostFrequent = new ArrayList<>(Math.min(maxPairs, pairs.size()));
+        for(int i = 0; i < pairs.size() && i < maxPairs; i++) {
+            long key = pairs.get(i).getKey();
+            mostFrequent.add(new int[]{(int) (key >>> 32), (int) key});
+        }
+        return mostFrequent;
+    }
+
+    /**
+     * @return the same key whatever the order of the tags
+     */
+    private static long pairKey(int tagId1, int tagId2) {
+        int low = Math.min(tagId1, tagId2);
+        int high = Math.max(tagId1, tagId2);
+        return ((long) low << 32) | high;
+    }
+
+    /**
+     * Statistics of a group of tests
+     */
+    static class Group {
+        private final Metric confidence;
+        private final Metric ocrTime;
+
+        private Group() {
+            confidence = new Metric(QuantileSketch.linear(0, 100, CONFIDENCE_BINS));
+            ocrTime = new Metric(QuantileSketch.logarithmic(MIN_OCR_TIME, MAX_OCR_TIME, OCR_TIME_ERROR));
+        }
+
+        private Group(Group other) {
+            confidence = other.confidence.copy();
+            ocrTime = other.ocrTime.copy();
+        }
+
+        private void add(float confidence, long ocrTime) {
+            this.confidence.add(confidence);
+            if(ocrTime >= 0) {
+                this.ocrTime.add(ocrTime);
+            }
+        }
+
+        private Group copy() {
+            return new Group(this);
+        }
+
+        /**
+         * @return statistics of the confidence in percentage
+         */
+        Metric getConfidence() {
+            return confidence;
+        }
+
+        /**
+         * @return statistics of the OCR time in milliseconds, of the tests where the OCR ran
+         */
+        Metric getOcrTime() {
+            return ocrTime;
+        }
+    }
+
+    /**
+     * Summary of the values of a quantity, computed incrementally (the mean and the variance with the Welford's algorithm)
+     */
+    static class Metric {
+        private long count = 0;
+        private double mean = 0;
+        private double squaredDeviations = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private final QuantileSketch sketch;
+
+        private Metric(QuantileSketch sketch) {
+            this.sketch = sketch;
+        }
+
+        private Metric copy() {
+            Metric copy = new Metric(sketch.copy());
+            copy.count = count;
+            copy.mean = mean;
+            copy.squaredDeviations = squaredDeviations;
+            copy.min = min;
+            copy.max = max;
+            return copy;
+        }
+
+        /**
+         * @param value value to add, NaN is ignored
+         */
+        private void add(double value) {
+            if(Double.isNaN(value)) {
+                return;
+            }
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            squaredDeviations += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sketch.add(value);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * @return mean of the values, NaN if there are none
+         */
+        double getMean() {
+            return count > 0 ? mean : Double.NaN;
+        }
+
+        /**
+         * @return sample standard deviation of the values, 0 if there are less than two
+         */
+        double getStandardDeviation() {
+            return count > 1 ? Math.sqrt(squaredDeviations / (count - 1)) : 0;
+        }
+
+        /**
+         * @return lowest value, NaN if there are none
+         */
+        double getMin() {
+            return count > 0 ? min : Double.NaN;
+        }
+
+        /**
+         * @return highest value, NaN if there are none
+         */
+        double getMax() {
+            return count > 0 ? max : Double.NaN;
+        }
+
+        /**
+         * @param percentile percentile between 0 and 100, e.g. 50 for the median
+         * @return estimate of the percentile within the resolution of the sketch, NaN if there are no values
+         */
+        double getPercentile(double percentile) {
+            if(count == 0) {
+                return Double.NaN;
+            }
+            //the exact bounds are known, the estimate never goes beyond them
+            double estimate = sketch.getQuantile(percentile / 100);
+            return Math.max(min, Math.min(max, estimate));
+        }
+    }
+}
@@ -3,29 +3,78 @@ package unipd.se18.ocrcamera;
 import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
 import android.util.Log;
+import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
 import com.google.firebase.ml.vision.FirebaseVision;
 import com.google.firebase.ml.vision.common.FirebaseVisionImage;
 import com.google.firebase.ml.vision.text.FirebaseVisionText;
 import com.google.firebase.ml.vision.text.FirebaseVisionTextRecognizer;
 
-import java.util.concurrent.CountDownLatch;
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Class the implements the common OCR interface to retrieve text from an image
+ * Class the implements the common OCR interface to retrieve text from an image.
+ * Firebase gives the same on device recognizer to every caller of the app, so all the instances share it
+ * and there is nothing to pool: each instance only bounds the extractions it hands to the recognizer
+ * at the same time with a semaphore, the others wait in a queue without blocking a thread. An instance should be reused for many images and closed when done,
+ * the shared recognizer stays open until the process ends.
  * @author Pietro Prandini (g2)
  */
-public class TextExtractor implements OCRInterface {
+public class TextExtractor implements OCRInterface, Closeable {
     /**
      * TAG used for the logs of this class
      */
     private final String TAG = "TextExtractor";
 
+    /**
+     * Version of the engine, must follow the firebase-ml-vision dependency in build.gradle
+     */
+    static final String VERSION = "firebase-ml-vision:18.0.1 on-device";
+
+    /**
+     * Thread notifying the results: the main thread, used by default by the tasks, could be the one waiting for them
+     */
+    private static final Executor CALLBACK_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Recognizer shared by the whole process, created by the first extraction
+     */
+    private static FirebaseVisionTextRecognizer recognizer;
+
+    /**
+     * Slots of the shared recognizer, each one is used by one extraction at a time
+     */
+    private final Semaphore slots;
+
+    /**
+     * Extractions waiting for a free slot, started by the extractions ending
+     */
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger waits = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor, with an extraction at a time for each processor
+     */
+    TextExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
     /**
      * Constructor
+     * @param maxRecognizers maximum number of extractions handed to the recognizer at the same time.
+     *                       The others wait for a free slot
      */
-    TextExtractor() {    }
+    TextExtractor(int maxRecognizers) {
+        slots = new Semaphore(Math.max(1, maxRecognizers));
+    }
 
     /**
      * Extracts a text from a given image.
@@ -41,54 +90,178 @@ public class TextExtractor implements OCRInterface {
     }
 
     /**
-     * Extracts a text from a given image.
+     * Extracts a text from a given image without waiting for it.
      *
      * @param img The image in a Bitmap format
-     * @return The String of the text recognized (empty String if nothing is recognized)
+     * @param listener receives the text recognized, on a background thread
+     */
+    public void getTextFromImg(Bitmap img, OCRListener listener)
+    {
+        Log.d(TAG, "getTextFromImg (async)");
+        // Defines the image that will be analysed to get the text
+        extractText(FirebaseVisionImage.fromBitmap(img), listener);
+    }
+
+    /**
+     * @return name and version of the OCR engine
+     */
+    public String getVersion() {
+        return VERSION;
+    }
+
+    /**
+     * Extracts a text from a given image, waiting for the result.
+     *
+     * @param img The image in a Bitmap format
+     * @return The String of the text recognized (empty String if nothing is recognized),
+     * EXTRACTION_FAILED if the extraction fails
      * @author Pietro Prandini (g2)
      */
     private String extractText(Bitmap img)
     {
         Log.d(TAG, "extractText");
-        long beforeWaiting = java.lang.System.currentTimeMillis();
-        // Defines the image that will be analysed to get the text
-        FirebaseVisionImage fbImage = FirebaseVisionImage.fromBitmap(img);
-        // Defines that will be used an on device text recognizer
-        FirebaseVisionTextRecognizer textRecognizer = FirebaseVision.getInstance().getOnDeviceTextRecognizer();
+        OcrFuture fbText = new OcrFuture();
+        extractText(FirebaseVisionImage.fromBitmap(img), fbText);
+        try
+        {
+            //analogous to wait
+            return fbText.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return EXTRACTION_FAILED;
+        }
+        catch (ExecutionException e)
+        {
+            Log.e(TAG, "extractText -> " + e.getCause());
+            return EXTRACTION_FAILED;
+        }
+    }
 
+    /**
+     * Starts the extraction of a text from a given image, the listener is notified by CALLBACK_EXECUTOR.
+     *
+     * @param img The image to analyse
+     * @param listener receives the text recognized or the failure
+     */
+    private void extractText(final FirebaseVisionImage img, final OCRListener listener)
+    {
+        if (closed) {
+            Log.e(TAG, "extractText -> extractor closed");
+            listener.onTextRecognitionFailed(new IllegalStateException("TextExtractor closed"));
+            return;
+        }
+        final long beforeWaiting = java.lang.System.currentTimeMillis();
+        Runnable extraction = new Runnable() {
+            @Override
+            public void run() {
+                extractText(img, getRecognizer(), beforeWaiting, listener);
+            }
+        };
+        if (slots.tryAcquire()) {
+            extraction.run();
+        } else {
+            // Waits for a free slot without blocking the thread
+            waits.incrementAndGet();
+            waiting.add(extraction);
+            startWaiting();
+        }
+    }
 
-        //latch used to wait for extraction to finish
-        final CountDownLatch latch = new CountDownLatch(1);
+    /**
+     * Starts the waiting extractions while there are free slots, each one keeps its slot until it ends.
+     * Called after queueing an extraction too, in case the slots have been released meanwhile
+     */
+    private void startWaiting()
+    {
+        while (!waiting.isEmpty() && slots.tryAcquire()) {
+            Runnable extraction = waiting.poll();
+            if (extraction == null) {
+                // Taken by another thread
+                slots.release();
+            } else {
+                extraction.run();
+            }
+        }
+    }
 
-        Task<FirebaseVisionText>fbText = textRecognizer.processImage(fbImage).addOnSuccessListener(new OnSuccessListener<FirebaseVisionText>() {
-            @Override
-            public void onSuccess(FirebaseVisionText firebaseVisionText) {
+    /**
+     * Frees the slot of an extraction ended, starting the next waiting one
+     */
+    private void releaseSlot()
+    {
+        slots.release();
+        startWaiting();
+    }
 
-                Log.v(TAG, "extractText -> onSuccess ->\n-----      RECOGNIZED TEXT       -----\n"
-                        + firebaseVisionText.getText() + "\n----- END OF THE RECOGNIZED TEXT -----");
+    /**
+     * @return the on device recognizer of Firebase: FirebaseVision returns the same cached instance at each call,
+     * so it is never closed here, it would close the recognizer of every other TextExtractor of the process
+     */
+    private static synchronized FirebaseVisionTextRecognizer getRecognizer()
+    {
+        if (recognizer == null) {
+            recognizer = FirebaseVision.getInstance().getOnDeviceTextRecognizer();
+        }
+        return recognizer;
+    }
 
-                //analogous to signal
-                latch.countDown();
-            }
-        });
+    /**
+     * Starts the extraction holding a slot, freed when the extraction ends.
+     *
+     * @param fbImage The image to analyse
+     * @param textRecognizer the shared recognizer
+     * @param beforeWaiting time of the request
+     * @param listener receives the text recognized or the failure
+     */
+    private void extractText(FirebaseVisionImage fbImage, FirebaseVisionTextRecognizer textRecognizer,
+                             final long beforeWaiting, final OCRListener listener)
+    {
+        try {
+            textRecognizer.processImage(fbImage)
+                    .addOnSuccessListener(CALLBACK_EXECUTOR, new OnSuccessListener<FirebaseVisionText>() {
+                        @Override
+                        public void onSuccess(FirebaseVisionText firebaseVisionText) {
+                            releaseSlot();
 
-        if(!fbText.isSuccessful()) {
-            try
-            {
-                //analogous to wait
-                latch.await();
-            }
-            catch (InterruptedException e)
-            {
-                return "Failed to extract text.";
-            }
+                            Log.v(TAG, "extractText -> onSuccess ->\n-----      RECOGNIZED TEXT       -----\n"
+                                    + firebaseVisionText.getText() + "\n----- END OF THE RECOGNIZED TEXT -----");
 
+                            long afterWaiting = java.lang.System.currentTimeMillis();
+                            Log.i(TAG, "extractText -> text extracted in " + (afterWaiting - beforeWaiting) + " milliseconds");
+                            // Return the recognized text
+                            listener.onTextRecognized(firebaseVisionText.getText());
+                        }
+                    })
+                    .addOnFailureListener(CALLBACK_EXECUTOR, new OnFailureListener() {
+                        @Override
+                        public void onFailure(@NonNull Exception e) {
+                            releaseSlot();
+                            Log.e(TAG, "extractText -> onFailure -> " + e.getMessage());
+                            listener.onTextRecognitionFailed(e);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            releaseSlot();
+            Log.e(TAG, "extractText -> processImage failed: " + e.getMessage());
+            listener.onTextRecognitionFailed(e);
         }
+    }
 
-        long afterWaiting = java.lang.System.currentTimeMillis();
-        Log.i(TAG, "extractText -> text extracted in " + (afterWaiting - beforeWaiting) + " milliseconds");
-        // Return the recognized text
-        String ocrResult = fbText.getResult().getText();
-        return ocrResult;
+    /**
+     * Stops accepting extractions, the ones in progress or waiting end normally.
+     * The shared recognizer isn't closed, the other instances may still be using it
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * @return number of extractions that had to wait for a free slot
+     */
+    int getRecognizerWaits() {
+        return waits.get();
     }
-}
\ No newline at end of file
+}
@@ -8,6 +8,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -22,6 +25,37 @@ public class Utils {
         return bitmap;
     }
 
+    /**
+     * @param filePath name of a jpeg file to convert to bitmap
+     * @param reqWidth width needed, the image is subsampled as long as it stays at least this wide
+     * @return image converted to bitmap, null if the file can't be decoded
+     */
+    public static Bitmap loadBitmapFromFile(String filePath, int reqWidth) {
+        //read only the size of the image
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, reqWidth);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeFile(filePath, options);
+    }
+
+    /**
+     * @param width width of the full image
+     * @param reqWidth width needed
+     * @return the largest power of two that keeps the subsampled width at least reqWidth
+     */
+    public static int calculateInSampleSize(int width, int reqWidth) {
+        int inSampleSize = 1;
+        if (reqWidth > 0) {
+            while (width / (inSampleSize * 2) >= reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+        return inSampleSize;
+    }
+
 
     /**
      * @param filePath
@@ -43,6 +77,22 @@ public class Utils {
 
     }
 
+    /**
+     * @param file file to read
+     * @return the whole content of the file
+     * @throws IOException if the file can't be read
+     */
+    public static byte[] readFile(File file) throws IOException {
+        DataInputStream stream = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] content = new byte[(int) file.length()];
+            stream.readFully(content);
+            return content;
+        } finally {
+            stream.close();
+        }
+    }
+
     /**
      * @param filePath path to file
      * @return file extension if exists, null otherwise
@@ -0,0 +1,197 @@
+package unipd.se18.ocrcamera;
+
+/**
+ * Similarity between two words based on the weighted Levenshtein distance, normalized on the
+ * length of the longest word: 1 - distance / maxLength.
+ * Insertions and deletions cost 1, substitutions cost 1 except for the pairs of characters that
+ * the OCR easily confuses, which cost less.
+ * The computation stops as soon as the similarity can't exceed the minimum requested, and reuses
+ * the rows of the distance matrix of the calling thread, so it doesn't allocate.
+ * @author Francesco Pham (g3)
+ */
+final class WordSimilarity {
+
+    /**
+     * Characters covered by the substitution costs table, the others always cost 1
+     */
+    private static final int TABLE_SIZE = 128;
+
+    /**
+     * Cost of substituting the first character with the second one, indexed by first * TABLE_SIZE + second
+     */
+    private static final double[] SUBSTITUTION_COSTS = new double[TABLE_SIZE * TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < SUBSTITUTION_COSTS.length; i++) {
+            // For most cases, the cost of substituting 2 characters is 1.0
+            SUBSTITUTION_COSTS[i] = 1.0;
+        }
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            SUBSTITUTION_COSTS[c * TABLE_SIZE + c] = 0;
+        }
+
+        // The cost for substituting 't' and 'r' is considered
+        // smaller as these 2 are located next to each other
+        // on a keyboard
+        SUBSTITUTION_COSTS['t' * TABLE_SIZE + 'r'] = 0.5;
+        SUBSTITUTION_COSTS['q' * TABLE_SIZE + 'o'] = 0.5;
+        SUBSTITUTION_COSTS['I' * TABLE_SIZE + 'l'] = 0.5;
+    }
+
+    /**
+     * Canonical character of each character of the table, the same for the characters whose substitution costs less than 1
+     */
+    private static final char[] CANONICAL = new char[TABLE_SIZE];
+
+    static {
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            CANONICAL[c] = c;
+        }
+        for (char c1 = 0; c1 < TABLE_SIZE; c1++) {
+            for (char c2 = 0; c2 < TABLE_SIZE; c2++) {
+                if (c1 != c2 && SUBSTITUTION_COSTS[c1 * TABLE_SIZE + c2] < 1.0) {
+                    CANONICAL[c1] = CANONICAL[c2];
+                }
+            }
+        }
+    }
+
+    /**
+     * Two rows of the distance matrix for each thread, grown when a longer word is found
+     */
+    private static final ThreadLocal<double[][]> ROWS = new ThreadLocal<double[][]>() {
+        @Override
+        protected double[][] initialValue() {
+            return new double[2][32];
+        }
+    };
+
+    private WordSimilarity() {
+    }
+
+    /**
+     * @param c1 character of the first word
+     * @param c2 character of the second word
+     * @return cost of substituting c1 with c2
+     */
+    static double substitutionCost(char c1, char c2) {
+        if (c1 == c2) {
+            return 0;
+        }
+        if (c1 < TABLE_SIZE && c2 < TABLE_SIZE) {
+            return SUBSTITUTION_COSTS[c1 * TABLE_SIZE + c2];
+        }
+        return 1.0;
+    }
+
+    /**
+     * Replacing each character with its canonical one, the cheap substitutions become matches:
+     * the unit cost Levenshtein distance between two canonical words is never greater than
+     * the weighted distance between the original words.
+     * @param c a character
+     * @return the canonical character of c
+     */
+    static char canonical(char c) {
+        return c < TABLE_SIZE ? CANONICAL[c] : c;
+    }
+
+    /**
+     * @param maxLength length of the longest word
+     * @param minSimilarity minimum similarity, between 0 and 1
+     * @return the maximum number of unit cost edits between two words, the longest of maxLength characters,
+     * that can still give a similarity greater than minSimilarity
+     */
+    static int maxEdits(int maxLength, double minSimilarity) {
+        int edits = 0;
+        while (edits < maxLength && exceeds(edits + 1, maxLength, minSimilarity)) {
+            edits++;
+        }
+        return edits;
+    }
+
+    /**
+     * @param length1 length of the first word
+     * @param length2 length of the second word
+     * @param minSimilarity minimum similarity, between 0 and 1
+     * @return true if two words with these lengths can have a similarity greater than minSimilarity
+     */
+    static boolean lengthsCompatible(int length1, int length2, double minSimilarity) {
+        int maxLength = Math.max(length1, length2);
+        return maxLength == 0 || exceeds(Math.abs(length1 - length2), maxLength, minSimilarity);
+    }
+
+    /**
+     * @param word first word
+     * @param other second word
+     * @param minSimilarity the similarities not greater than this value are not computed, between 0 and 1
+     * @return the similarity between 0 and 1 if greater than minSimilarity, 0 otherwise
+     */
+    static double similarity(String word, String other, double minSimilarity) {
+        int length1 = word.length();
+        int length2 = other.length();
+        int maxLength = Math.max(length1, length2);
+
+        if (maxLength == 0 || word.equals(other)) {
+            return 1.0;
+        }
+
+        // the distance is at least the difference between the lengths
+        if (!exceeds(Math.abs(length1 - length2), maxLength, minSimilarity)) {
+            return 0;
+        }
+
+        double[][] rows = ROWS.get();
+        if (rows[0].length < length2 + 1) {
+            int size = Math.max(length2 + 1, rows[0].length * 2);
+            rows = new double[][]{new double[size], new double[size]};
+            ROWS.set(rows);
+        }
+        double[] previous = rows[0];
+        double[] current = rows[1];
+
+        for (int j = 0; j <= length2; j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 0; i < length1; i++) {
+            char c1 = word.charAt(i);
+            current[0] = i + 1;
+
+            // lower bound of the final distance: the distance reached in this row plus the
+            // difference between the lengths of the remaining parts of the words
+            double bound = current[0] + Math.abs((length1 - i - 1) - length2);
+
+            for (int j = 0; j < length2; j++) {
+                double substitution = previous[j] + substitutionCost(c1, other.charAt(j));
+                double deletion = previous[j + 1] + 1;
+                double insertion = current[j] + 1;
+                double distance = Math.min(insertion, Math.min(deletion, substitution));
+                current[j + 1] = distance;
+
+                double cellBound = distance + Math.abs((length1 - i - 1) - (length2 - j - 1));
+                if (cellBound < bound) {
+                    bound = cellBound;
+                }
+            }
+
+            if (!exceeds(bound, maxLength, minSimilarity)) {
+                return 0;
+            }
+
+            double[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        double similarity = 1.0 - previous[length2] / maxLength;
+        return similarity > minSimilarity ? similarity : 0;
+    }
+
+    /**
+     * @return true if a distance gives a similarity greater than minSimilarity,
+     * computed as the similarity itself so that the pruning never disagrees with the final check
+     */
+    private static boolean exceeds(double distance, int maxLength, double minSimilarity) {
+        return 1.0 - distance / maxLength > minSimilarity;
+    }
+}
@@ -0,0 +1,96 @@
+package unipd.se18.ocrcamera;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test AdaptiveResolutionOcr class
+ */
+public class AdaptiveResolutionOcrTest {
+
+    /**
+     * @return white image with black lines of "characters" of the given height, separated by the same height
+     */
+    private static LuminanceImage textLines(int width, int height, int lineHeight) {
+        int[] values = new int[width * height];
+        for(int y = 0; y < height; y++) {
+            boolean textRow = (y / lineHeight) % 2 == 1;
+            for(int x = 0; x < width; x++) {
+                //characters 3 pixels wide separated by 3 pixels
+                values[y * width + x] = textRow && (x / 3) % 2 == 0 ? 0 : 255;
+            }
+        }
+        return new LuminanceImage(width, height, values);
+    }
+
+    @Test
+    public void estimateLineHeight() {
+        assertEquals(12, AdaptiveResolutionOcr.estimateLineHeight(textLines(200, 300, 12)), 0);
+        assertEquals(40, AdaptiveResolutionOcr.estimateLineHeight(textLines(200, 600, 40)), 0);
+        assertTrue(Float.isNaN(AdaptiveResolutionOcr.estimateLineHeight(new LuminanceImage(10, 10, new int[100]))));
+    }
+
+    @Test
+    public void chooseDownscaleFactor() {
+        assertEquals(1, AdaptiveResolutionOcr.chooseDownscaleFactor(Float.NaN));
+        assertEquals(1, AdaptiveResolutionOcr.chooseDownscaleFactor(40));
+        assertEquals(2, AdaptiveResolutionOcr.chooseDownscaleFactor(64));
+        assertEquals(4, AdaptiveResolutionOcr.chooseDownscaleFactor(200));
+    }
+
+    @Test
+    public void textQuality() {
+        assertEquals(1, AdaptiveResolutionOcr.textQuality("Aqua, Sodium Laureth Sulfate, PEG-100 Stearate"), 0);
+        assertEquals(0, AdaptiveResolutionOcr.textQuality(""), 0);
+        assertTrue(AdaptiveResolutionOcr.textQuality("#@ lI1 ~~ Aqua ,. ;' rn|| %%") < AdaptiveResolutionOcr.MIN_TEXT_QUALITY);
+    }
+
+    @Test
+    public void extractFullResolution() {
+        //OCR recognizing garbage the first time and real words the second time
+        final List<Bitmap> recognized = new ArrayList<>();
+        OCRInterface engine = new OCRInterface() {
+            @Override
+            public String getTextFromImg(Bitmap img) {
+                return null;
+            }
+
+            @Override
+            public void getTextFromImg(Bitmap img, OCRListener listener) {
+                recognized.add(img);
+                listener.onTextRecognized(recognized.size() == 1 ? "#@ ~~ %%" : "Aqua, Glycerin");
+            }
+
+            @Override
+            public String getVersion() {
+                return "test";
+            }
+        };
+
+        final String[] text = new String[1];
+        final boolean[] fallback = new boolean[1];
+        new AdaptiveResolutionOcr(engine).extract(null, 1, new AdaptiveResolutionOcr.ResultListener() {
+            @Override
+            public void onTextRecognized(String recognizedText, int factor, boolean fellBack) {
+                text[0] = recognizedText;
+                fallback[0] = fellBack;
+            }
+
+            @Override
+            public void onTextRecognitionFailed(Exception e) {
+                fail(e.getMessage());
+            }
+        });
+
+        //at full resolution there is nothing to fall back to
+        assertEquals(1, recognized.size());
+        assertEquals("#@ ~~ %%", text[0]);
+        assertFalse(fallback[0]);
+    }
+}
@@ -0,0 +1,131 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test AsyncPipelineStage class
+ */
+public class AsyncPipelineStageTest {
+
+    /**
+     * Collects the items reaching the end of the pipeline
+     */
+    private static class CollectingSink implements PipelineSink<Integer> {
+        private final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+        private volatile boolean finished = false;
+
+        @Override
+        public void put(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void finish() {
+            finished = true;
+        }
+    }
+
+    /**
+     * Doubles the items after a delay on a single scheduler thread, as an OCR notifying its results,
+     * fails the multiples of 5 and drops the multiples of 7
+     */
+    private static class DelayedProcessor implements AsyncPipelineStage.Processor<Integer, Integer> {
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final long delay;
+
+        /**
+         * @param delay time taken by each item in milliseconds
+         */
+        DelayedProcessor(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public void start(final Integer item, final AsyncPipelineStage.Callback<Integer> callback) {
+            int current = inFlight.incrementAndGet();
+            while (current > maxInFlight.get()) {
+                maxInFlight.set(current);
+            }
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    inFlight.decrementAndGet();
+                    if (item % 5 == 0) {
+                        callback.onFailed(new Exception("failure"));
+                    } else {
+                        callback.onDone(item % 7 == 0 ? null : item * 2);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void finish() throws InterruptedException {
+        CollectingSink sink = new CollectingSink();
+        DelayedProcessor processor = new DelayedProcessor(2);
+        AsyncPipelineStage<Integer, Integer> stage = new AsyncPipelineStage<>("double", 3, processor, sink);
+        final List<Integer> dropped = Collections.synchronizedList(new ArrayList<Integer>());
+        stage.setDropListener(new PipelineStage.DropListener<Integer>() {
+            @Override
+            public void onDropped(Integer item) {
+                dropped.add(item);
+            }
+        });
+
+        int expected = 0;
+        for (int i = 1; i <= 40; i++) {
+            stage.put(i);
+            if (i % 5 != 0 && i % 7 != 0) {
+                expected++;
+            }
+        }
+        stage.finish();
+        processor.scheduler.shutdown();
+
+        //finish() returns only when every item has ended
+        assertTrue(sink.finished);
+        assertEquals(expected, sink.items.size());
+        assertEquals(40 - expected, dropped.size());
+        assertTrue(sink.items.contains(2));
+        //put() waits while the items in flight are at the maximum
+        assertTrue(processor.maxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        CollectingSink sink = new CollectingSink();
+        DelayedProcessor processor = new DelayedProcessor(200);
+        AsyncPipelineStage<Integer, Integer> stage = new AsyncPipelineStage<>("double", 2, processor, sink);
+        final AtomicInteger dropped = new AtomicInteger();
+        stage.setDropListener(new PipelineStage.DropListener<Integer>() {
+            @Override
+            public void onDropped(Integer item) {
+                dropped.incrementAndGet();
+            }
+        });
+
+        stage.put(1);
+        stage.cancel();
+        stage.put(2);
+        stage.finish();
+        processor.scheduler.shutdown();
+
+        //the items ending after the cancellation are dropped, the next stage is still finished
+        assertEquals(0, sink.items.size());
+        assertEquals(2, dropped.get());
+        assertTrue(sink.finished);
+    }
+}
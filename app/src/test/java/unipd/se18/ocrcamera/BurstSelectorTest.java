@@ -0,0 +1,48 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test BurstSelector class
+ */
+public class BurstSelectorTest {
+
+    @Test
+    public void getBest() {
+        BurstSelector<String> selector = new BurstSelector<>();
+        assertNull(selector.getBest());
+
+        selector.add("blurry", 50, 0);
+        selector.add("sharp", 400, 0);
+        //sharper, but taken while the phone was shaking
+        selector.add("shaken", 600, 2);
+        selector.add("sharp too", 400, 0);
+
+        assertEquals("sharp", selector.getBest());
+        assertEquals(4, selector.size());
+    }
+
+    @Test
+    public void score() {
+        assertEquals(100, BurstSelector.score(100, 0), 1e-9);
+        assertEquals(50, BurstSelector.score(100, BurstSelector.REFERENCE_MOTION), 1e-9);
+        assertTrue(BurstSelector.score(100, 0.1) > BurstSelector.score(100, 0.2));
+    }
+
+    @Test
+    public void motionMeter() {
+        MotionMeter meter = new MotionMeter();
+        for(int i = 0; i < 20; i++) {
+            meter.onAcceleration(0, 0, 9.81f);
+        }
+        assertEquals(0, meter.getMotion(), 0);
+
+        //shaking along x
+        for(int i = 0; i < 20; i++) {
+            meter.onAcceleration(i % 2 == 0 ? 1 : -1, 0, 9.81f);
+        }
+        assertEquals(2, meter.getMotion(), 0.01);
+    }
+}
@@ -0,0 +1,32 @@
+package unipd.se18.ocrcamera;
+
+import android.support.media.ExifInterface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test CapturedImage class
+ */
+public class CapturedImageTest {
+
+    @Test
+    public void toExifOrientation() {
+        assertEquals(ExifInterface.ORIENTATION_NORMAL, CapturedImage.toExifOrientation(0));
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90, CapturedImage.toExifOrientation(90));
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_180, CapturedImage.toExifOrientation(180));
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_270, CapturedImage.toExifOrientation(270));
+        //rotations are normalized
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90, CapturedImage.toExifOrientation(450));
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_270, CapturedImage.toExifOrientation(-90));
+    }
+
+    @Test
+    public void toRotation() {
+        for(int rotation = 0; rotation < 360; rotation += 90) {
+            assertEquals(rotation, CapturedImage.toRotation(CapturedImage.toExifOrientation(rotation)));
+        }
+        assertEquals(0, CapturedImage.toRotation(ExifInterface.ORIENTATION_UNDEFINED));
+    }
+}
@@ -0,0 +1,84 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test DuplicateFinder class
+ */
+public class DuplicateFinderTest {
+
+    /**
+     * @return the hash with the given bits flipped
+     */
+    private static long flip(long hash, int... bits) {
+        for (int bit : bits) {
+            hash ^= 1L << bit;
+        }
+        return hash;
+    }
+
+    @Test
+    public void treeSearchSameAsLinearScan() {
+        Random random = new Random(7);
+        long[] hashes = new long[2000];
+        HammingBkTree tree = new HammingBkTree();
+        for (int i = 0; i < hashes.length; i++) {
+            //some hashes close to a previous one, as with shots of the same label
+            hashes[i] = i > 0 && random.nextInt(4) == 0
+                    ? flip(hashes[random.nextInt(i)], random.nextInt(64), random.nextInt(64))
+                    : random.nextLong();
+            tree.add(hashes[i], i);
+        }
+        assertEquals(hashes.length, tree.size());
+
+        for (int q = 0; q < 50; q++) {
+            long query = hashes[random.nextInt(hashes.length)];
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < hashes.length; i++) {
+                if (PerceptualHash.distance(query, hashes[i]) <= 6) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> found = tree.search(query, 6);
+            Collections.sort(found);
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void clustersByChainOfDuplicates() {
+        long label = 0x0123456789abcdefL;
+        long other = ~label;
+        long[] hashes = {
+                label,
+                other,
+                flip(label, 1, 2, 3),
+                flip(other, 10),
+                //near the third picture but not the first one: same cluster through the chain
+                flip(label, 1, 2, 3, 20, 21, 22, 23, 24),
+                0x5555555555555555L
+        };
+
+        List<int[]> clusters = DuplicateFinder.findClusters(hashes, 6);
+        assertEquals(2, clusters.size());
+        assertArrayEquals(new int[]{0, 2, 4}, clusters.get(0));
+        assertArrayEquals(new int[]{1, 3}, clusters.get(1));
+
+        assertArrayEquals(new int[]{0, 1, 5}, DuplicateFinder.representatives(hashes.length, clusters));
+    }
+
+    @Test
+    public void noDuplicates() {
+        long[] hashes = {0L, -1L, 0x5555555555555555L};
+        List<int[]> clusters = DuplicateFinder.findClusters(hashes, 6);
+        assertTrue(clusters.isEmpty());
+        assertArrayEquals(new int[]{0, 1, 2}, DuplicateFinder.representatives(hashes.length, clusters));
+    }
+}
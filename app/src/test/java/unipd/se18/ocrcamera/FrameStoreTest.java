@@ -0,0 +1,56 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test FrameStore class
+ */
+public class FrameStoreTest {
+
+    @Test
+    public void referenceCounting() {
+        FrameStore.Frame frame = new FrameStore.Frame(new byte[]{1, 2, 3}, 90);
+        int id = FrameStore.put(frame);
+
+        //the frame is shared, not copied
+        assertSame(frame, FrameStore.acquire(id));
+        FrameStore.release(id);
+        assertSame(frame, FrameStore.acquire(id));
+
+        //dropped when the reference of put() and the one of acquire() are released
+        FrameStore.release(id);
+        FrameStore.release(id);
+        assertNull(FrameStore.acquire(id));
+
+        //releasing a dropped frame does nothing
+        FrameStore.release(id);
+        assertNull(FrameStore.acquire(id));
+    }
+
+    @Test
+    public void get() {
+        FrameStore.Frame frame = new FrameStore.Frame(new byte[]{1}, 0);
+        int id = FrameStore.put(frame);
+
+        //get() doesn't add a reference, so the reference of put() is the last one
+        assertSame(frame, FrameStore.get(id));
+        assertSame(frame, FrameStore.get(id));
+        FrameStore.release(id);
+        assertNull(FrameStore.get(id));
+    }
+
+    @Test
+    public void distinctIds() {
+        int first = FrameStore.put(new FrameStore.Frame(new byte[0], 0));
+        int second = FrameStore.put(new FrameStore.Frame(new byte[0], 0));
+        assertNotEquals(first, second);
+
+        FrameStore.release(first);
+        assertNull(FrameStore.acquire(first));
+        assertNotNull(FrameStore.acquire(second));
+        FrameStore.release(second);
+        FrameStore.release(second);
+    }
+}
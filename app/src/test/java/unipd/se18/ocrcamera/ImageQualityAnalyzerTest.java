@@ -0,0 +1,112 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test ImageQualityAnalyzer class
+ */
+public class ImageQualityAnalyzerTest {
+
+    /**
+     * @return grey image with dark and light "characters" 2 pixels wide in the upper half
+     */
+    private static LuminanceImage sharpText(int width, int height) {
+        int[] values = new int[width * height];
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                boolean text = y < height / 2 && (y / 4) % 2 == 0;
+                values[y * width + x] = text ? ((x / 2) % 2 == 0 ? 60 : 180) : 128;
+            }
+        }
+        return new LuminanceImage(width, height, values);
+    }
+
+    /**
+     * @return the image blurred by a box filter of the given radius
+     */
+    private static LuminanceImage blur(LuminanceImage image, int radius) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] values = new int[width * height];
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                int sum = 0;
+                int count = 0;
+                for(int dy = -radius; dy <= radius; dy++) {
+                    for(int dx = -radius; dx <= radius; dx++) {
+                        int nx = x + dx;
+                        int ny = y + dy;
+                        if(nx >= 0 && ny >= 0 && nx < width && ny < height) {
+                            sum += image.get(nx, ny);
+                            count++;
+                        }
+                    }
+                }
+                values[y * width + x] = sum / count;
+            }
+        }
+        return new LuminanceImage(width, height, values);
+    }
+
+    private static LuminanceImage uniform(int width, int height, int luminance) {
+        int[] values = new int[width * height];
+        java.util.Arrays.fill(values, luminance);
+        return new LuminanceImage(width, height, values);
+    }
+
+    @Test
+    public void sharpness() {
+        LuminanceImage sharp = sharpText(300, 200);
+        double sharpSharpness = ImageQualityAnalyzer.analyze(sharp, false).getSharpness();
+        double blurredSharpness = ImageQualityAnalyzer.analyze(blur(sharp, 4), false).getSharpness();
+
+        assertTrue(sharpSharpness > QualityGate.DEFAULT_MIN_SHARPNESS);
+        assertTrue(blurredSharpness < QualityGate.DEFAULT_MIN_SHARPNESS);
+        assertEquals(0, ImageQualityAnalyzer.analyze(uniform(100, 100, 128), false).getSharpness(), 0);
+    }
+
+    @Test
+    public void exposureAndGlare() {
+        ImageQuality quality = ImageQualityAnalyzer.analyze(uniform(100, 50, 255), false);
+        assertEquals(255, quality.getMeanLuminance(), 1e-9);
+        assertEquals(1, quality.getHighlightFraction(), 1e-9);
+        assertEquals(0, quality.getShadowFraction(), 1e-9);
+
+        quality = ImageQualityAnalyzer.analyze(uniform(100, 50, 0), false);
+        assertEquals(0, quality.getMeanLuminance(), 1e-9);
+        assertEquals(1, quality.getShadowFraction(), 1e-9);
+    }
+
+    @Test
+    public void parallelSameAsSerial() {
+        Random random = new Random(5);
+        int[] values = new int[517 * 389];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(256);
+        }
+        LuminanceImage image = new LuminanceImage(517, 389, values);
+
+        ImageQuality serial = ImageQualityAnalyzer.analyze(image, false);
+        ImageQuality parallel = ImageQualityAnalyzer.analyze(image, true);
+        assertEquals(serial.getSharpness(), parallel.getSharpness(), 0);
+        assertEquals(serial.getMeanLuminance(), parallel.getMeanLuminance(), 0);
+        assertEquals(serial.getHighlightFraction(), parallel.getHighlightFraction(), 0);
+        assertEquals(serial.getShadowFraction(), parallel.getShadowFraction(), 0);
+    }
+
+    @Test
+    public void qualityGate() {
+        QualityGate gate = new QualityGate();
+        assertEquals(QualityGate.Reason.ACCEPTED, gate.check(new ImageQuality(500, 128, 0.01, 0.01)));
+        assertEquals(QualityGate.Reason.BLURRY, gate.check(new ImageQuality(5, 128, 0.01, 0.01)));
+        assertEquals(QualityGate.Reason.UNDEREXPOSED, gate.check(new ImageQuality(500, 10, 0, 0.9)));
+        assertEquals(QualityGate.Reason.OVEREXPOSED, gate.check(new ImageQuality(500, 245, 0.9, 0)));
+        assertEquals(QualityGate.Reason.GLARE, gate.check(new ImageQuality(500, 150, 0.3, 0)));
+        //a picture that can't be measured is left to the OCR
+        assertEquals(QualityGate.Reason.ACCEPTED, gate.check(null));
+    }
+}
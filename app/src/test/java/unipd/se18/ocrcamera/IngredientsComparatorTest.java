@@ -0,0 +1,152 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import info.debatty.java.stringsimilarity.CharacterSubstitutionInterface;
+import info.debatty.java.stringsimilarity.WeightedLevenshtein;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test IngredientsComparator class against the comparison done before the
+ * introduction of ExtractedWordsIndex
+ */
+public class IngredientsComparatorTest {
+
+    private static final String[] INGREDIENTS = {"aqua", "glycerin", "sodium", "laureth", "sulfate",
+            "cocamidopropyl", "betaine", "parfum", "citric", "acid", "sodium", "chloride", "benzoate",
+            "limonene", "linalool", "panthenol", "tocopherol", "cetearyl", "alcohol", "dimethicone",
+            "propylene", "glycol", "phenoxyethanol", "ethylhexylglycerin", "butyrospermum", "parkii",
+            "butter", "caprylic", "capric", "triglyceride", "xanthan", "gum", "ci", "77891"};
+
+    /**
+     * Comparison as implemented before, scanning every extracted word
+     */
+    private static float referenceComparison(String correct, String extracted) {
+        extracted = extracted.toLowerCase();
+        String[] extractedWords = extracted.trim().split("[ ,-:./\\n\\r]+");
+        String[] correctWords = correct.trim().split("[ ,-:./\\n\\r]+");
+
+        float points = 0;
+        int maxPoints = 0;
+        int posLastWordFound = 0;
+        int consecutiveNotFound = 0;
+
+        WeightedLevenshtein levenshtein = new WeightedLevenshtein(
+                new CharacterSubstitutionInterface() {
+                    public double cost(char c1, char c2) {
+                        if (c1 == 't' && c2 == 'r') {
+                            return 0.5;
+                        } else if (c1 == 'q' && c2 == 'o') {
+                            return 0.5;
+                        } else if (c1 == 'I' && c2 == 'l') {
+                            return 0.5;
+                        }
+                        return 1.0;
+                    }
+                });
+
+        for (String word : correctWords) {
+            boolean found = false;
+            int index = posLastWordFound;
+            word = word.toLowerCase();
+
+            if (word.length() >= 3) {
+                maxPoints += word.length();
+                for (int i = 0; i < extractedWords.length && !found; i++) {
+                    index = (posLastWordFound + i) % extractedWords.length;
+                    int maxLength = Math.max(word.length(), extractedWords[index].length());
+                    double similarity = 1.0 - levenshtein.distance(word, extractedWords[index]) / maxLength;
+
+                    if (similarity > 0.8) {
+                        if (points == 0 || i < consecutiveNotFound + 10) {
+                            points += word.length() * similarity;
+                        } else {
+                            points += (float) word.length() * similarity / 2;
+                        }
+                        extractedWords[index] = "";
+                        found = true;
+                    }
+                }
+            }
+
+            if (!found && word.length() >= 6) {
+                maxPoints += word.length();
+                for (int i = 0; i < extractedWords.length && !found; i++) {
+                    index = (posLastWordFound + i) % extractedWords.length;
+                    if (extractedWords[index].contains(word)) {
+                        if (points == 0 || i < consecutiveNotFound + 10) {
+                            points += word.length();
+                        } else {
+                            points += (float) word.length() / 2;
+                        }
+                        extractedWords[index] = extractedWords[index].replace(word, "");
+                        found = true;
+                    }
+                }
+            }
+
+            if (found) {
+                consecutiveNotFound = 0;
+                posLastWordFound = index;
+            } else {
+                consecutiveNotFound++;
+            }
+        }
+        return (points / maxPoints) * 100;
+    }
+
+    /**
+     * @return the text with random OCR-like errors: substitutions, dropped separators, dropped and swapped words
+     */
+    private static String addNoise(String text, Random random) {
+        String[] words = text.split(" ");
+        StringBuilder noisy = new StringBuilder();
+        for (int w = 0; w < words.length; w++) {
+            if (random.nextInt(10) == 0) {
+                continue; //dropped word
+            }
+            StringBuilder word = new StringBuilder(words[w]);
+            for (int i = 0; i < word.length(); i++) {
+                if (random.nextInt(12) == 0) {
+                    word.setCharAt(i, "trqoliecaj".charAt(random.nextInt(10)));
+                }
+            }
+            noisy.append(word);
+            //sometimes words are joined
+            noisy.append(random.nextInt(8) == 0 ? "" : (random.nextBoolean() ? ", " : " "));
+        }
+        //move a block of text to the end, like a column read in the wrong order
+        int cut = noisy.length() > 0 ? random.nextInt(noisy.length()) : 0;
+        return noisy.substring(cut) + "\n" + noisy.substring(0, cut);
+    }
+
+    @Test
+    public void compareMatchesReference() {
+        Random random = new Random(7);
+        for (int n = 0; n < 500; n++) {
+            StringBuilder correct = new StringBuilder();
+            int length = 1 + random.nextInt(90);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    correct.append(random.nextInt(3) == 0 ? ", " : " ");
+                }
+                correct.append(INGREDIENTS[random.nextInt(INGREDIENTS.length)]);
+            }
+            String extracted = addNoise(correct.toString(), random);
+
+            assertEquals(extracted, referenceComparison(correct.toString(), extracted),
+                    IngredientsComparator.compare(correct.toString(), extracted), 0);
+        }
+    }
+
+    @Test
+    public void compare() {
+        assertEquals(100, IngredientsComparator.compare("Aqua, Glycerin, Parfum", "AQUA GLYCERIN PARFUM"), 1e-4);
+        assertEquals(0, IngredientsComparator.compare("Aqua, Glycerin, Parfum", ""), 0);
+        //"glycerin" is found inside the joined words, but it counts twice in the maximum points
+        assertEquals(50, IngredientsComparator.compare("glycerin", "aquaglycerinparfum"), 1e-4);
+    }
+}
@@ -0,0 +1,62 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test IngredientsDictionary class
+ */
+public class IngredientsDictionaryTest {
+
+    private IngredientsDictionary dictionary;
+
+    @Before
+    public void init() {
+        dictionary = new IngredientsDictionary(Arrays.asList("Aqua", "Glycerin", "Sodium Laureth Sulfate",
+                "Sodium Lauryl Sulfate", "Cocamidopropyl Betaine", "Parfum", "CI 77891"));
+    }
+
+    @Test
+    public void correctWord() {
+        assertEquals(9, dictionary.size());
+        assertEquals("glycerin", dictionary.correctWord("glycerjn"));
+        assertEquals("glycerin", dictionary.correctWord("glycerln"));
+        assertEquals("cocamidopropyl", dictionary.correctWord("cocamidpropy"));
+        //the closest word wins
+        assertEquals("laureth", dictionary.correctWord("laurerh"));
+        assertEquals("lauryl", dictionary.correctWord("lauryi"));
+        //too different or too short
+        assertEquals("benzoate", dictionary.correctWord("benzoate"));
+        assertEquals("aqa", dictionary.correctWord("aqa"));
+
+        assertEquals(6, dictionary.getLookups());
+        assertEquals(5, dictionary.getCorrections());
+        assertTrue(dictionary.getMeanLookupMicros() > 0);
+    }
+
+    @Test
+    public void correctText() {
+        assertEquals("AQUA, GLYCERIN, Sodium Laureth Sulfate, parfum, CI 77891.",
+                dictionary.correctText("AQUA, GLYCERJN, Sodlum Laureth Sulfale, parfun, CI 77891."));
+    }
+
+    @Test
+    public void loadResource() throws IOException {
+        InputStream stream = new FileInputStream("src/main/res/raw/inci_ingredients.txt");
+        try {
+            IngredientsDictionary inci = IngredientsDictionary.load(stream);
+            assertTrue(inci.size() > 100);
+            assertEquals("Phenoxyethanol, Tocopheryl Acetate",
+                    inci.correctText("Phenoxyethanoi, Tocopheryi Acetale"));
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test OcrFuture class
+ */
+public class OcrFutureTest {
+
+    @Test
+    public void get() throws InterruptedException, ExecutionException {
+        final OcrFuture future = new OcrFuture();
+        assertFalse(future.isDone());
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                future.onTextRecognized("text");
+            }
+        }).start();
+
+        assertEquals("text", future.get());
+        assertTrue(future.isDone());
+        assertFalse(future.cancel(true));
+    }
+
+    @Test
+    public void failure() throws InterruptedException {
+        OcrFuture future = new OcrFuture();
+        future.onTextRecognitionFailed(new IOException("engine not available"));
+        //later results are ignored
+        future.onTextRecognized("text");
+
+        try {
+            future.get();
+            fail("The failure must be thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void timeout() throws InterruptedException, ExecutionException, TimeoutException {
+        new OcrFuture().get(10, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,56 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test OcrResultCache class
+ */
+public class OcrResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void init() throws IOException {
+        //created by the cache
+        dir = new File(folder.getRoot(), "cache");
+    }
+
+    @Test
+    public void getKey() {
+        OcrResultCache cache = new OcrResultCache(dir, "engine 1");
+        OcrResultCache newEngineCache = new OcrResultCache(dir, "engine 2");
+        byte[] picture = {1, 2, 3};
+
+        assertEquals(cache.getKey(picture), cache.getKey(new byte[]{1, 2, 3}));
+        assertFalse(cache.getKey(picture).equals(cache.getKey(new byte[]{1, 2, 4})));
+        assertFalse(cache.getKey(picture).equals(newEngineCache.getKey(picture)));
+    }
+
+    @Test
+    public void get() {
+        OcrResultCache cache = new OcrResultCache(dir, "engine 1");
+        String key = cache.getKey(new byte[]{1, 2, 3});
+
+        assertNull(cache.get(key));
+        cache.put(key, "aqua, glycerin\nparfum");
+
+        //a new instance reads the texts stored by the previous ones
+        OcrResultCache reopenedCache = new OcrResultCache(dir, "engine 1");
+        assertEquals("aqua, glycerin\nparfum", reopenedCache.get(key));
+
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, reopenedCache.getHits());
+    }
+}
@@ -0,0 +1,69 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test OrientationFilter class
+ */
+public class OrientationFilterTest {
+
+    private static final float GRAVITY = 9.81f;
+
+    /**
+     * Gives the filter the readings of the phone standing at an angle
+     * @param angle angle of the phone in degrees, 0 when upright
+     * @return the rotation after the readings
+     */
+    private static int tilt(OrientationFilter filter, int angle, int readings) {
+        int rotation = OrientationFilter.ROTATION_UNKNOWN;
+        for (int i = 0; i < readings; i++) {
+            double radians = Math.toRadians(angle);
+            rotation = filter.onAcceleration((float) (-GRAVITY * Math.sin(radians)),
+                    (float) (GRAVITY * Math.cos(radians)), 0);
+        }
+        return rotation;
+    }
+
+    @Test
+    public void rotations() {
+        OrientationFilter filter = new OrientationFilter(1, 10);
+        assertEquals(0, tilt(filter, 0, 1));
+        assertEquals(90, tilt(filter, 90, 1));
+        assertEquals(180, tilt(filter, 180, 1));
+        assertEquals(270, tilt(filter, 270, 1));
+        assertEquals(0, tilt(filter, 350, 1));
+    }
+
+    @Test
+    public void hysteresis() {
+        OrientationFilter filter = new OrientationFilter(1, 10);
+        assertEquals(0, tilt(filter, 0, 1));
+        //just past the boundary the rotation doesn't change
+        assertEquals(0, tilt(filter, 50, 1));
+        assertEquals(90, tilt(filter, 60, 1));
+        //and going back it stays until past the boundary on the other side
+        assertEquals(90, tilt(filter, 40, 1));
+        assertEquals(0, tilt(filter, 30, 1));
+    }
+
+    @Test
+    public void flatKeepsLastRotation() {
+        OrientationFilter filter = new OrientationFilter(1, 10);
+        assertEquals(OrientationFilter.ROTATION_UNKNOWN, filter.onAcceleration(0, 0, GRAVITY));
+        assertEquals(180, tilt(filter, 180, 1));
+        assertEquals(180, filter.onAcceleration(0.1f, 0.1f, GRAVITY));
+        assertEquals(180, filter.getRotation());
+    }
+
+    @Test
+    public void movingAverage() {
+        OrientationFilter filter = new OrientationFilter(4, 0);
+        assertEquals(0, tilt(filter, 0, 4));
+        //a single reading is averaged with the previous ones
+        assertEquals(0, tilt(filter, 90, 1));
+        //once the old readings leave the window the rotation follows
+        assertEquals(90, tilt(filter, 90, 3));
+    }
+}
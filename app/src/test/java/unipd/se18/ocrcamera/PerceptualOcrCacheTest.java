@@ -0,0 +1,138 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test PerceptualOcrCache class
+ */
+public class PerceptualOcrCacheTest {
+
+    private static final int SIZE = PerceptualOcrCache.KEY_WIDTH;
+    private static final int BLOCKS = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void init() throws IOException {
+        //created by the cache
+        file = new File(folder.getRoot(), "cache.json");
+    }
+
+    /**
+     * @param seed seed of the pattern, different seeds give different pictures
+     * @param offset luminance added to every pixel, as with a different exposure
+     * @param noise maximum luminance added to each pixel, as with the sensor noise
+     */
+    private static LuminanceImage picture(int seed, int offset, int noise) {
+        return picture(seed, offset, noise, -1);
+    }
+
+    /**
+     * @param seed seed of the pattern, different seeds give different pictures
+     * @param offset luminance added to every pixel, as with a different exposure
+     * @param noise maximum luminance added to each pixel, as with the sensor noise
+     * @param word first of three blocks of a line changed, as a different word on a label
+     *             with the same layout, -1 for none
+     */
+    private static LuminanceImage picture(int seed, int offset, int noise, int word) {
+        int[] values = new int[SIZE * SIZE];
+        Random random = new Random(seed);
+        //blocks of random luminance, like the lines of a label
+        int[] blocks = new int[BLOCKS * BLOCKS];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = 40 + random.nextInt(160);
+        }
+        for (int i = word; i >= 0 && i < word + 3; i++) {
+            blocks[i] = blocks[i] < 120 ? blocks[i] + 60 : blocks[i] - 60;
+        }
+        int blockSize = SIZE / BLOCKS;
+        Random noiseRandom = new Random(seed * 31 + offset);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int value = blocks[(y / blockSize) * BLOCKS + x / blockSize] + offset
+                        + (noise > 0 ? noiseRandom.nextInt(noise) : 0);
+                values[y * SIZE + x] = Math.max(0, Math.min(255, value));
+            }
+        }
+        return new LuminanceImage(SIZE, SIZE, values);
+    }
+
+    @Test
+    public void hashDistance() {
+        long hash = PerceptualHash.dHash(picture(1, 0, 0));
+        assertEquals(0, PerceptualHash.distance(hash, PerceptualHash.dHash(picture(1, 0, 0))));
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.dHash(picture(1, 20, 6))) <= PerceptualOcrCache.MAX_HASH_DISTANCE);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.dHash(picture(2, 0, 0))) > PerceptualOcrCache.MAX_HASH_DISTANCE);
+    }
+
+    @Test
+    public void sameLabelTakenAgain() {
+        PerceptualOcrCache cache = new PerceptualOcrCache(file, "ocr 1", 4);
+        cache.put(PerceptualOcrCache.getKey(picture(1, 0, 0)), "aqua, glycerin");
+
+        //brighter and noisy, but the same label
+        assertEquals("aqua, glycerin", cache.get(PerceptualOcrCache.getKey(picture(1, 20, 6))));
+        assertNull(cache.get(PerceptualOcrCache.getKey(picture(2, 0, 0))));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void sameLayoutDifferentText() {
+        PerceptualOcrCache cache = new PerceptualOcrCache(file, "ocr 1", 4);
+        PerceptualOcrCache.Key key = PerceptualOcrCache.getKey(picture(1, 0, 0));
+        cache.put(key, "aqua, glycerin");
+
+        //a single word changed: the hash is close, only the thumbnail tells the labels apart
+        LuminanceImage otherLabel = picture(1, 0, 0, 5 * BLOCKS + 7);
+        PerceptualOcrCache.Key otherKey = PerceptualOcrCache.getKey(otherLabel);
+        assertTrue(PerceptualHash.distance(PerceptualHash.dHash(picture(1, 0, 0)), PerceptualHash.dHash(otherLabel))
+                <= PerceptualOcrCache.MAX_HASH_DISTANCE);
+        assertTrue(key.differentCells(otherKey) > PerceptualOcrCache.MAX_DIFFERENT_CELLS);
+        assertNull(cache.get(otherKey));
+
+        //the same label brighter and noisy differs in no cell
+        assertEquals(0, key.differentCells(PerceptualOcrCache.getKey(picture(1, 20, 6))));
+    }
+
+    @Test
+    public void leastRecentlyUsedRemoved() {
+        PerceptualOcrCache cache = new PerceptualOcrCache(file, "ocr 1", 2);
+        cache.put(PerceptualOcrCache.getKey(picture(1, 0, 0)), "first");
+        cache.put(PerceptualOcrCache.getKey(picture(2, 0, 0)), "second");
+        //the first becomes the most recently used
+        assertEquals("first", cache.get(PerceptualOcrCache.getKey(picture(1, 0, 0))));
+        cache.put(PerceptualOcrCache.getKey(picture(3, 0, 0)), "third");
+
+        assertEquals(2, cache.size());
+        assertEquals("first", cache.get(PerceptualOcrCache.getKey(picture(1, 0, 0))));
+        assertNull(cache.get(PerceptualOcrCache.getKey(picture(2, 0, 0))));
+    }
+
+    @Test
+    public void getAfterSave() {
+        PerceptualOcrCache cache = new PerceptualOcrCache(file, "ocr 1", 4);
+        cache.put(PerceptualOcrCache.getKey(picture(1, 0, 0)), "aqua,\n\"glycerin\"");
+        cache.save();
+
+        PerceptualOcrCache reopenedCache = new PerceptualOcrCache(file, "ocr 1", 4);
+        assertEquals(1, reopenedCache.size());
+        assertEquals("aqua,\n\"glycerin\"", reopenedCache.get(PerceptualOcrCache.getKey(picture(1, 0, 0))));
+
+        //the texts of another engine are discarded
+        PerceptualOcrCache otherEngineCache = new PerceptualOcrCache(file, "ocr 2", 4);
+        assertEquals(0, otherEngineCache.size());
+    }
+}
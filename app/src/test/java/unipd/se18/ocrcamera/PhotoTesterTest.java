@@ -0,0 +1,121 @@
+package unipd.se18.ocrcamera;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test PhotoTester class, with the simulated OCR
+ */
+public class PhotoTesterTest {
+
+    private static final int TESTS = 300;
+
+    private static final String[] INGREDIENTS = {"Aqua", "Glycerin", "Sodium Laureth Sulfate",
+            "Cocamidopropyl Betaine", "Parfum", "Citric Acid", "Sodium Chloride", "Limonene",
+            "Tocopheryl Acetate", "Cetearyl Alcohol", "Dimethicone", "Phenoxyethanol"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File environment;
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(content);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Creates the tests: a fake picture and the description of each one
+     */
+    @Before
+    public void init() throws IOException, JSONException {
+        environment = folder.getRoot();
+        File directory = folder.newFolder("tests");
+
+        for(int i = 0; i < TESTS; i++) {
+            StringBuilder ingredients = new StringBuilder();
+            for(int j = 0; j < 5 + i % 20; j++) {
+                ingredients.append(j > 0 ? ", " : "").append(INGREDIENTS[(i + j * 7) % INGREDIENTS.length]);
+            }
+            JSONObject description = new JSONObject();
+            description.put("ingredients", ingredients.toString());
+            description.put("tags", new JSONArray().put("tag" + (i % 3)).put(i % 2 == 0 ? "even" : "odd"));
+            description.put("notes", "");
+            description.put("original_name", "test" + i + ".jpg");
+
+            String name = String.format("test%05d", i);
+            write(new File(directory, name + ".jpg"), new byte[]{(byte) i});
+            write(new File(directory, name + ".txt"), description.toString().getBytes("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testAndReport() throws IOException, JSONException {
+        SimulatedOcr ocr = new SimulatedOcr(1, null);
+        ocr.setNoise(0.05, 0.01, 0.02);
+        ocr.setLatency(2, 0.5);
+
+        PhotoTester tester = new PhotoTester(environment, "tests");
+        tester.setOcrCacheEnabled(false);
+        tester.setSimulatedOcr(ocr);
+        tester.setPipelineWorkers(1, 8, 2);
+
+        File report = tester.testAndReport();
+        ocr.close();
+
+        assertNotNull(report);
+        JSONObject records = new JSONObject(new String(Utils.readFile(report), "UTF-8"));
+        assertEquals(TESTS, records.length());
+
+        TestStatistics.Metric confidence = tester.getStatistics().getTotal().getConfidence();
+        assertEquals(TESTS, confidence.getCount());
+        assertTrue(confidence.getMean() > 50 && confidence.getMean() < 100);
+        assertEquals(TESTS, tester.getStatistics().getTotal().getOcrTime().getCount());
+        assertEquals(5, tester.getTagsStats().size());
+
+        //each of the 5 tags and of the 3 pairs listed takes a line for the name and one for each metric
+        assertEquals(1 + 5 * 3, tester.getTagsStatsString().split("\n").length);
+        assertTrue(tester.getTagsStatsString().contains("p99"));
+        assertEquals(1 + 3 * 3, tester.getTagPairsStatsString(3).split("\n").length);
+        //no quality gate, no picture rejected
+        assertEquals("", tester.getQualityStatsString());
+    }
+
+    @Test
+    public void testAndReportWithDictionary() throws IOException {
+        SimulatedOcr ocr = new SimulatedOcr(1, null);
+        ocr.setNoise(0.05, 0.01, 0.02);
+        IngredientsDictionary dictionary = new IngredientsDictionary(Arrays.asList(INGREDIENTS));
+        //lookups made before the tests are not counted
+        dictionary.correctText("glycerjn");
+
+        PhotoTester tester = new PhotoTester(environment, "tests");
+        tester.setOcrCacheEnabled(false);
+        tester.setSimulatedOcr(ocr);
+        tester.setIngredientsDictionary(dictionary);
+        assertEquals("", tester.getDictionaryStatsString());
+
+        assertNotNull(tester.testAndReport());
+        ocr.close();
+
+        String stats = tester.getDictionaryStatsString();
+        assertTrue(stats.startsWith("Ingredients dictionary"));
+        assertEquals(dictionary.getLookups() - 1 + " words looked up", stats.split("\n")[1].split(",")[0]);
+    }
+}
@@ -0,0 +1,168 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test PipelineStage class
+ */
+public class PipelineStageTest {
+
+    /**
+     * Collects the items reaching the end of the pipeline
+     */
+    private static class CollectingSink implements PipelineSink<Integer> {
+        private final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+        private boolean finished = false;
+
+        @Override
+        public void put(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void finish() {
+            finished = true;
+        }
+    }
+
+    @Test
+    public void finish() throws InterruptedException {
+        CollectingSink sink = new CollectingSink();
+        PipelineStage<Integer, Integer> square = new PipelineStage<>("square", 3, 2,
+                new PipelineStage.Processor<Integer, Integer>() {
+                    @Override
+                    public Integer process(Integer item) {
+                        return item * item;
+                    }
+                }, sink);
+        PipelineStage<Integer, Integer> increment = new PipelineStage<>("increment", 2, 1,
+                new PipelineStage.Processor<Integer, Integer>() {
+                    @Override
+                    public Integer process(Integer item) {
+                        return item + 1;
+                    }
+                }, square);
+
+        int expectedSum = 0;
+        for (int i = 0; i < 100; i++) {
+            increment.put(i);
+            expectedSum += (i + 1) * (i + 1);
+        }
+        increment.finish();
+
+        assertTrue(sink.finished);
+        assertEquals(100, sink.items.size());
+        int actualSum = 0;
+        for (int item : sink.items) {
+            actualSum += item;
+        }
+        assertEquals(expectedSum, actualSum);
+    }
+
+    @Test
+    public void droppedItems() throws InterruptedException {
+        CollectingSink sink = new CollectingSink();
+        PipelineStage<Integer, Integer> evenOnly = new PipelineStage<>("evenOnly", 2, 4,
+                new PipelineStage.Processor<Integer, Integer>() {
+                    @Override
+                    public Integer process(Integer item) throws Exception {
+                        if (item % 3 == 0) {
+                            throw new Exception("failure");
+                        }
+                        return item % 2 == 0 ? item : null;
+                    }
+                }, sink);
+
+        for (int i = 0; i < 12; i++) {
+            evenOnly.put(i);
+        }
+        evenOnly.finish();
+
+        Collections.sort(sink.items);
+        assertArrayEquals(new Integer[]{2, 4, 8, 10}, sink.items.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void errorDropsItem() throws InterruptedException {
+        CollectingSink sink = new CollectingSink();
+        final List<Integer> dropped = Collections.synchronizedList(new ArrayList<Integer>());
+        PipelineStage<Integer, Integer> stage = new PipelineStage<>("error", 2, 4,
+                new PipelineStage.Processor<Integer, Integer>() {
+                    @Override
+                    public Integer process(Integer item) {
+                        if (item == 3) {
+                            throw new OutOfMemoryError("test");
+                        }
+                        return item;
+                    }
+                }, sink);
+        stage.setDropListener(new PipelineStage.DropListener<Integer>() {
+            @Override
+            public void onDropped(Integer item) {
+                dropped.add(item);
+            }
+        });
+
+        for (int i = 0; i < 6; i++) {
+            stage.put(i);
+        }
+        try {
+            stage.finish();
+            fail("the error is thrown by finish()");
+        } catch (OutOfMemoryError e) {
+            assertEquals("test", e.getMessage());
+        }
+
+        //the worker stopped by the error reports its item, the other one processes the rest
+        assertArrayEquals(new Integer[]{3}, dropped.toArray(new Integer[0]));
+        assertEquals(5, sink.items.size());
+        assertTrue(sink.finished);
+    }
+
+    @Test(timeout = 10000)
+    public void everyWorkerStoppedByError() throws InterruptedException {
+        CollectingSink sink = new CollectingSink();
+        final List<Integer> dropped = Collections.synchronizedList(new ArrayList<Integer>());
+        PipelineStage<Integer, Integer> failing = new PipelineStage<>("failing", 2, 1,
+                new PipelineStage.Processor<Integer, Integer>() {
+                    @Override
+                    public Integer process(Integer item) {
+                        throw new StackOverflowError("test");
+                    }
+                }, sink);
+        failing.setDropListener(new PipelineStage.DropListener<Integer>() {
+            @Override
+            public void onDropped(Integer item) {
+                dropped.add(item);
+            }
+        });
+        PipelineStage<Integer, Integer> increment = new PipelineStage<>("increment", 1, 1,
+                new PipelineStage.Processor<Integer, Integer>() {
+                    @Override
+                    public Integer process(Integer item) {
+                        return item + 1;
+                    }
+                }, failing);
+
+        //far more items than the queues hold: without workers the puts would wait forever
+        for (int i = 0; i < 50; i++) {
+            increment.put(i);
+        }
+        try {
+            increment.finish();
+            fail("the error is thrown by finish()");
+        } catch (StackOverflowError e) {
+            assertEquals("test", e.getMessage());
+        }
+
+        assertEquals(50, dropped.size());
+        assertEquals(0, sink.items.size());
+        assertTrue(sink.finished);
+    }
+}
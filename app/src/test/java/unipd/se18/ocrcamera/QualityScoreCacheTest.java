@@ -0,0 +1,100 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test QualityScoreCache class
+ */
+public class QualityScoreCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private File picture;
+
+    @Before
+    public void init() throws IOException {
+        dir = folder.getRoot();
+        picture = new File(dir, "picture.jpg");
+        write(picture, new byte[]{1, 2, 3});
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(content);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void getAfterSave() {
+        QualityScoreCache cache = new QualityScoreCache(new File(dir, QualityScoreCache.FILE_NAME), "analyzer 1");
+        assertNull(cache.get(picture));
+        cache.put(picture, new ImageQuality(123.5, 100, 0.25, 0.125));
+        cache.save();
+
+        //a new instance reads the qualities saved by the previous ones
+        QualityScoreCache reopenedCache = new QualityScoreCache(new File(dir, QualityScoreCache.FILE_NAME), "analyzer 1");
+        ImageQuality quality = reopenedCache.get(picture);
+        assertNotNull(quality);
+        assertEquals(123.5, quality.getSharpness(), 0);
+        assertEquals(100, quality.getMeanLuminance(), 0);
+        assertEquals(0.25, quality.getHighlightFraction(), 0);
+        assertEquals(0.125, quality.getShadowFraction(), 0);
+
+        assertEquals(1, reopenedCache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void changedPicture() throws IOException {
+        QualityScoreCache cache = new QualityScoreCache(new File(dir, QualityScoreCache.FILE_NAME), "analyzer 1");
+        cache.put(picture, new ImageQuality(10, 10, 0, 0));
+        assertNotNull(cache.get(picture));
+
+        write(picture, new byte[]{1, 2, 3, 4});
+        assertNull(cache.get(picture));
+    }
+
+    @Test
+    public void deletedPicture() throws IOException {
+        File otherPicture = new File(dir, "other.jpg");
+        write(otherPicture, new byte[]{4, 5, 6});
+        QualityScoreCache cache = new QualityScoreCache(new File(dir, QualityScoreCache.FILE_NAME), "analyzer 1");
+        cache.put(picture, new ImageQuality(10, 10, 0, 0));
+        cache.put(otherPicture, new ImageQuality(20, 20, 0, 0));
+        cache.save();
+
+        //the entry of the picture deleted is dropped even if nothing else changed
+        assertTrue(otherPicture.delete());
+        QualityScoreCache reopenedCache = new QualityScoreCache(new File(dir, QualityScoreCache.FILE_NAME), "analyzer 1");
+        assertEquals(2, reopenedCache.size());
+        reopenedCache.save();
+        assertEquals(1, reopenedCache.size());
+        assertEquals(1, new QualityScoreCache(new File(dir, QualityScoreCache.FILE_NAME), "analyzer 1").size());
+        assertNotNull(reopenedCache.get(picture));
+    }
+
+    @Test
+    public void newVersion() {
+        QualityScoreCache cache = new QualityScoreCache(new File(dir, QualityScoreCache.FILE_NAME), "analyzer 1");
+        cache.put(picture, new ImageQuality(10, 10, 0, 0));
+        cache.save();
+
+        QualityScoreCache newCache = new QualityScoreCache(new File(dir, QualityScoreCache.FILE_NAME), "analyzer 2");
+        assertEquals(0, newCache.size());
+        assertNull(newCache.get(picture));
+    }
+}
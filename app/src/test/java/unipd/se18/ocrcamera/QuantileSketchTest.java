@@ -0,0 +1,51 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test QuantileSketch class
+ */
+public class QuantileSketchTest {
+
+    @Test
+    public void linear() {
+        QuantileSketch sketch = QuantileSketch.linear(0, 100, 200);
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+
+        for(int i = 1; i <= 100; i++) {
+            sketch.add(i);
+        }
+        assertEquals(100, sketch.getCount());
+        assertEquals(50, sketch.getQuantile(0.5), 0.5);
+        assertEquals(90, sketch.getQuantile(0.9), 0.5);
+        assertEquals(99, sketch.getQuantile(0.99), 0.5);
+
+        //values out of range are counted in the bins at the ends
+        sketch.add(-10);
+        sketch.add(1000);
+        assertEquals(0, sketch.getQuantile(0), 0.5);
+        assertEquals(100, sketch.getQuantile(1), 0.5);
+    }
+
+    @Test
+    public void logarithmic() {
+        QuantileSketch sketch = QuantileSketch.logarithmic(1, 600000, 0.025);
+        Random random = new Random(1);
+        double[] values = new double[10000];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextDouble() * 10);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for(double quantile : new double[]{0.5, 0.9, 0.99}) {
+            double exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            assertEquals(exact, sketch.getQuantile(quantile), exact * 0.025);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package unipd.se18.ocrcamera;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test ReportWriter class
+ */
+public class ReportWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void init() throws IOException {
+        dir = folder.getRoot();
+    }
+
+    private static String readFile(File file) throws IOException {
+        Scanner scanner = new Scanner(file, "UTF-8").useDelimiter("\\A");
+        String text = scanner.hasNext() ? scanner.next() : "";
+        scanner.close();
+        return text;
+    }
+
+    private static JSONObject record(int value) throws JSONException {
+        return new JSONObject().put("value", value);
+    }
+
+    @Test
+    public void write() throws IOException, JSONException {
+        ReportWriter writer = new ReportWriter(dir.getPath(), "report.txt");
+
+        //the third record waits for the first two
+        assertEquals(0, writer.write(2, "c", record(2)));
+        assertEquals(0, writer.skip(1));
+        assertEquals(3, writer.write(0, "a", record(0)));
+        assertEquals(1, writer.write(3, "d", record(3)));
+
+        File report = writer.commit(4);
+        writer.close();
+
+        assertEquals(new File(dir, "report.txt"), report);
+        assertFalse(new File(dir, "report.txt.tmp").exists());
+        assertEquals(3, writer.getWrittenRecords());
+        assertEquals("{\n\"a\":{\"value\":0},\n\"c\":{\"value\":2},\n\"d\":{\"value\":3}\n}", readFile(report));
+    }
+
+    @Test
+    public void close() throws IOException, JSONException {
+        ReportWriter writer = new ReportWriter(dir.getPath(), "report.txt");
+        writer.write(0, "a", record(0));
+        writer.write(2, "c", record(2));
+        writer.close();
+
+        //without commit only the temporary file exists and it contains the records written in order
+        assertFalse(new File(dir, "report.txt").exists());
+        assertEquals("{\n\"a\":{\"value\":0}", readFile(new File(dir, "report.txt.tmp")));
+    }
+
+    @Test(expected = IOException.class)
+    public void commitIncomplete() throws IOException, JSONException {
+        ReportWriter writer = new ReportWriter(dir.getPath(), "report.txt");
+        writer.write(1, "b", record(1));
+        try {
+            writer.commit(2);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void commitMissingLastRecords() throws IOException, JSONException {
+        ReportWriter writer = new ReportWriter(dir.getPath(), "report.txt");
+        writer.write(0, "a", record(0));
+        writer.skip(1);
+        try {
+            writer.commit(3);
+            fail("A report without its last record must not be committed");
+        } catch (IOException e) {
+            //the previous report isn't replaced
+            assertFalse(new File(dir, "report.txt").exists());
+        } finally {
+            writer.close();
+        }
+    }
+}
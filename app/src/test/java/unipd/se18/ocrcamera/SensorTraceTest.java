@@ -0,0 +1,92 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test SensorTrace and SensorTraceReplay classes
+ */
+public class SensorTraceTest {
+
+    private static final float GRAVITY = 9.81f;
+
+    //readings every 60 ms, as with SENSOR_DELAY_UI
+    private static final long READING_NANOS = 60000000L;
+
+    /**
+     * Trace of a phone held for a while at each angle, with the noise of a hand
+     * @param angles angles of the phone in degrees, 0 when upright
+     * @param readings readings at each angle
+     * @param noise maximum noise of the angle in degrees
+     */
+    private static SensorTrace trace(int[] angles, int readings, int noise) {
+        Random random = new Random(3);
+        SensorTrace trace = new SensorTrace();
+        long timestamp = 0;
+        for (int angle : angles) {
+            for (int i = 0; i < readings; i++) {
+                double radians = Math.toRadians(angle + (random.nextDouble() * 2 - 1) * noise);
+                trace.add(SensorTrace.TYPE_ACCELEROMETER, timestamp,
+                        (float) (-GRAVITY * Math.sin(radians)), (float) (GRAVITY * Math.cos(radians)), 0.5f);
+                trace.add(SensorTrace.TYPE_MAGNETIC_FIELD, timestamp + 1000, 20, -5, -40);
+                timestamp += READING_NANOS;
+            }
+        }
+        return trace;
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        SensorTrace trace = trace(new int[]{0, 90}, 20, 5);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        trace.write(output);
+        //header and 17 bytes for each reading
+        assertEquals(20 + 17 * trace.size(), output.size());
+
+        SensorTrace read = SensorTrace.read(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(trace.size(), read.size());
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals(trace.getSensorType(i), read.getSensorType(i));
+            assertEquals(trace.getTimestamp(i), read.getTimestamp(i));
+            for (int axis = 0; axis < 3; axis++) {
+                assertEquals(trace.getValue(i, axis), read.getValue(i, axis), 0);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readNotATrace() throws IOException {
+        SensorTrace.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test
+    public void replayTurns() {
+        SensorTrace trace = trace(new int[]{0, 90, 180, 270, 0}, 30, 5);
+        SensorTraceReplay replay = SensorTraceReplay.replay(trace, new OrientationFilter(5, 10));
+        assertEquals(150, replay.getReadings());
+        assertEquals(4, replay.getTurns());
+        assertEquals(0, replay.getMissedTurns());
+        assertEquals(4, replay.getRotationChanges());
+        assertEquals(0, replay.getFlipFlops());
+        //the average needs some readings to follow the turn
+        assertTrue(replay.getMeanLatency() > 0);
+        assertTrue(replay.getMaxLatency() < 5);
+        assertTrue(replay.getNanosPerReading() > 0);
+    }
+
+    @Test
+    public void hysteresisAvoidsFlipFlops() {
+        //phone held across the boundary between portrait and landscape
+        SensorTrace trace = trace(new int[]{0, 45}, 100, 15);
+        SensorTraceReplay withoutHysteresis = SensorTraceReplay.replay(trace, new OrientationFilter(1, 0));
+        SensorTraceReplay withHysteresis = SensorTraceReplay.replay(trace, new OrientationFilter(5, 10));
+        assertTrue(withoutHysteresis.getFlipFlops() > 10);
+        assertTrue(withHysteresis.getFlipFlops() < withoutHysteresis.getFlipFlops() / 5);
+    }
+}
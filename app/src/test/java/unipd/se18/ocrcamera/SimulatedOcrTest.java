@@ -0,0 +1,51 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test SimulatedOcr class
+ */
+public class SimulatedOcrTest {
+
+    private static final String INGREDIENTS = "Aqua, Sodium Laureth Sulfate, Cocamidopropyl Betaine, Glycerin, Parfum, Citric Acid";
+
+    @Test
+    public void getNoisyText() {
+        SimulatedOcr ocr = new SimulatedOcr(1, null);
+        assertEquals(INGREDIENTS, ocr.getNoisyText(INGREDIENTS));
+
+        ocr.setNoise(0.2, 0.05, 0.1);
+        String noisy = ocr.getNoisyText(INGREDIENTS);
+        assertNotEquals(INGREDIENTS, noisy);
+
+        //the same seed gives the same errors
+        SimulatedOcr same = new SimulatedOcr(1, null);
+        same.setNoise(0.2, 0.05, 0.1);
+        assertEquals(noisy, same.getNoisyText(INGREDIENTS));
+
+        //every word is lost
+        ocr.setNoise(0, 0, 1);
+        assertEquals("", ocr.getNoisyText(INGREDIENTS).replaceAll("[ ,]", ""));
+    }
+
+    @Test
+    public void recognize() throws InterruptedException, ExecutionException {
+        SimulatedOcr ocr = new SimulatedOcr(2, null);
+        ocr.setNoise(0.1, 0, 0);
+        ocr.setLatency(20, 0.5);
+
+        long latency = ocr.getLatency(INGREDIENTS);
+        assertTrue(latency > 0);
+
+        long started = System.currentTimeMillis();
+        OcrFuture text = new OcrFuture();
+        ocr.recognize(INGREDIENTS, text);
+        assertEquals(ocr.getNoisyText(INGREDIENTS), text.get());
+        assertTrue(System.currentTimeMillis() - started >= latency);
+        ocr.close();
+    }
+}
@@ -130,4 +130,59 @@ public class TestElementTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getTagIds() throws JSONException {
+        int[] ids = testElement.getTagIds();
+        assertEquals(3, ids.length);
+        assertEquals("testTag2", TagDictionary.getName(ids[1]));
+
+        //the same tag has the same id in every test
+        TestElement other = new TestElement(null, new JSONObject("{\"tags\": [\"testTag2\"]}"), "other");
+        assertEquals(ids[1], other.getTagIds()[0]);
+    }
+
+    @Test
+    public void getJsonObject() throws JSONException {
+        JSONObject json = testElement.getJsonObject();
+
+        assertEquals("testIng1, testIng2 ,TestIng3", json.getString("ingredients"));
+        assertEquals("testTag3", json.getJSONArray("tags").getString(2));
+        assertEquals("testNote", json.getString("notes"));
+        assertEquals("testOriginalName.jpg", json.getString("original_name"));
+        assertEquals(1, json.getDouble("confidence"), 0);
+        assertEquals("testRecogText", json.getString("extracted_text"));
+
+        //parsed again gives the same test
+        TestElement parsed = new TestElement(null, json, "test");
+        assertEquals(testElement.toString(), parsed.toString());
+    }
+
+    @Test
+    public void missingValues() throws JSONException {
+        TestElement empty = new TestElement(null, new JSONObject(), "empty");
+
+        assertEquals(0, empty.getConfidence(), 0);
+        assertEquals("", empty.getRecognizedText());
+        try {
+            empty.getIngredients();
+            fail("Missing ingredients must throw");
+        } catch (JSONException e) {
+            //expected
+        }
+        //missing tags are empty, so the statistics can always use them
+        assertEquals(0, empty.getTagIds().length);
+        assertEquals(0, empty.getTags().length);
+        assertFalse(empty.getJsonObject().has("tags"));
+    }
+
+    @Test
+    public void unknownKeysKept() throws JSONException {
+        TestElement element = new TestElement(null,
+                new JSONObject("{\"ingredients\": \"water\", \"author\": \"someone\", \"extracted_text\": \"old\"}"), "unknown");
+        element.setRecognizedText("new");
+
+        JSONObject json = element.getJsonObject();
+        assertEquals("someone", json.getString("author"));
+        assertEquals("new", json.getString("extracted_text"));
+    }
+}
@@ -0,0 +1,64 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test TestStatistics class
+ */
+public class TestStatisticsTest {
+
+    @Test
+    public void add() {
+        TestStatistics statistics = new TestStatistics();
+        statistics.add(new int[]{0, 1}, 50, 100);
+        statistics.add(new int[]{1, 2}, 70, 300);
+        statistics.add(new int[]{1}, 90, -1);
+
+        TestStatistics.Metric confidence = statistics.getTotal().getConfidence();
+        assertEquals(3, confidence.getCount());
+        assertEquals(70, confidence.getMean(), 1e-9);
+        assertEquals(20, confidence.getStandardDeviation(), 1e-9);
+        assertEquals(50, confidence.getMin(), 0);
+        assertEquals(90, confidence.getMax(), 0);
+        assertEquals(70, confidence.getPercentile(50), 0.5);
+
+        //the cached text has no OCR time
+        TestStatistics.Metric ocrTime = statistics.getTagGroup(1).getOcrTime();
+        assertEquals(2, ocrTime.getCount());
+        assertEquals(200, ocrTime.getMean(), 1e-9);
+        assertEquals(300, ocrTime.getPercentile(99), 300 * 0.025);
+
+        assertArrayEquals(new int[]{0, 1, 2}, statistics.getTagIds());
+        assertEquals(70, statistics.getTagGroup(1).getConfidence().getPercentile(50), 0.5);
+        assertNull(statistics.getTagGroup(3));
+    }
+
+    @Test
+    public void getTagPairGroup() {
+        TestStatistics statistics = new TestStatistics();
+        statistics.add(new int[]{0, 1, 2}, 40, 10);
+        statistics.add(new int[]{2, 0}, 60, 10);
+
+        TestStatistics.Group pair = statistics.getTagPairGroup(2, 0);
+        assertEquals(2, pair.getConfidence().getCount());
+        assertEquals(50, pair.getConfidence().getMean(), 1e-9);
+        assertEquals(1, statistics.getTagPairGroup(0, 1).getConfidence().getCount());
+        assertNull(statistics.getTagPairGroup(1, 3));
+    }
+
+    @Test
+    public void getTagPairs() {
+        TestStatistics statistics = new TestStatistics();
+        statistics.add(new int[]{0, 1, 2}, 40, 10);
+        statistics.add(new int[]{2, 0}, 60, 10);
+        statistics.add(new int[]{3, 1}, 60, 10);
+
+        //the pair of the most tests first, then in the order of the tags
+        assertEquals(4, statistics.getTagPairs(10).size());
+        assertArrayEquals(new int[]{0, 2}, statistics.getTagPairs(10).get(0));
+        assertArrayEquals(new int[]{0, 1}, statistics.getTagPairs(10).get(1));
+        assertEquals(2, statistics.getTagPairs(2).size());
+    }
+}
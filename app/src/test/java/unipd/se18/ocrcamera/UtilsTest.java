@@ -39,6 +39,15 @@ public class UtilsTest {
     }
 
 
+    @Test
+    public void calculateInSampleSize() {
+        //4000 / 4 = 1000 is still wider than 720, 4000 / 8 = 500 is not
+        assertEquals(4, Utils.calculateInSampleSize(4000, 720));
+        assertEquals(1, Utils.calculateInSampleSize(4000, 4000));
+        assertEquals(1, Utils.calculateInSampleSize(600, 720));
+        assertEquals(1, Utils.calculateInSampleSize(4000, 0));
+    }
+
     @Test
     public void getStringArrayFromJSON() {
         try {
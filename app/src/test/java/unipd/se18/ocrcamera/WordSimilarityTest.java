@@ -0,0 +1,86 @@
+package unipd.se18.ocrcamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import info.debatty.java.stringsimilarity.CharacterSubstitutionInterface;
+import info.debatty.java.stringsimilarity.WeightedLevenshtein;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class used to test WordSimilarity class against the weighted Levenshtein distance of the library
+ * used before by PhotoTester
+ */
+public class WordSimilarityTest {
+
+    private static final double MIN_SIMILARITY = 0.8;
+
+    private final WeightedLevenshtein levenshtein = new WeightedLevenshtein(
+            new CharacterSubstitutionInterface() {
+                public double cost(char c1, char c2) {
+                    return WordSimilarity.substitutionCost(c1, c2);
+                }
+            });
+
+    /**
+     * @return the similarity computed by the library, 0 if not greater than MIN_SIMILARITY
+     */
+    private double expectedSimilarity(String word, String other) {
+        int maxLength = Math.max(word.length(), other.length());
+        double similarity = 1.0 - levenshtein.distance(word, other) / maxLength;
+        return similarity > MIN_SIMILARITY ? similarity : 0;
+    }
+
+    @Test
+    public void substitutionCost() {
+        assertEquals(0.5, WordSimilarity.substitutionCost('t', 'r'), 0);
+        assertEquals(1.0, WordSimilarity.substitutionCost('r', 't'), 0);
+        assertEquals(0.5, WordSimilarity.substitutionCost('q', 'o'), 0);
+        assertEquals(1.0, WordSimilarity.substitutionCost('a', 'b'), 0);
+        assertEquals(1.0, WordSimilarity.substitutionCost('è', 'e'), 0);
+        assertEquals(0, WordSimilarity.substitutionCost('è', 'è'), 0);
+    }
+
+    @Test
+    public void similarity() {
+        assertEquals(1.0, WordSimilarity.similarity("glycerin", "glycerin", MIN_SIMILARITY), 0);
+        assertEquals(1.0 - 1.0 / 8, WordSimilarity.similarity("glycerin", "glycerjn", MIN_SIMILARITY), 1e-9);
+        assertEquals(1.0 - 0.5 / 6, WordSimilarity.similarity("citric", "cirric", MIN_SIMILARITY), 1e-9);
+        assertEquals(0, WordSimilarity.similarity("glycerin", "", MIN_SIMILARITY), 0);
+        assertEquals(0, WordSimilarity.similarity("aqua", "parfum", MIN_SIMILARITY), 0);
+        //the length difference alone exceeds the threshold
+        assertEquals(0, WordSimilarity.similarity("sodium", "sodiumlaureth", MIN_SIMILARITY), 0);
+    }
+
+    @Test
+    public void similarityMatchesLibrary() {
+        Random random = new Random(42);
+        String alphabet = "troqaeilc";
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                word.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            //mutate a copy of the word
+            StringBuilder other = new StringBuilder(word);
+            int edits = random.nextInt(4);
+            for (int e = 0; e < edits; e++) {
+                int position = random.nextInt(other.length() + 1);
+                char c = alphabet.charAt(random.nextInt(alphabet.length()));
+                switch (random.nextInt(3)) {
+                    case 0: other.insert(position, c); break;
+                    case 1: if (position < other.length()) other.deleteCharAt(position); break;
+                    default: if (position < other.length()) other.setCharAt(position, c); break;
+                }
+            }
+
+            String a = word.toString();
+            String b = other.toString();
+            assertEquals(a + " / " + b, expectedSimilarity(a, b), WordSimilarity.similarity(a, b, MIN_SIMILARITY), 1e-12);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package unipd.se18.ocrcamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the comparison between the correct ingredients and the extracted ones,
+ * done by PhotoTester.ingredientsTextComparison() for each test
+ */
+@State(Scope.Benchmark)
+public class IngredientsComparatorBenchmark {
+
+    /**
+     * Number of ingredients in the list
+     */
+    @Param({"10", "40", "80"})
+    public int ingredients;
+
+    /**
+     * Probability of an OCR error on each character
+     */
+    @Param({"0.0", "0.05", "0.15"})
+    public double noise;
+
+    private String correct;
+    private String extracted;
+
+    @Setup
+    public void setup() {
+        correct = IngredientsCorpus.ingredients(ingredients, 1);
+        extracted = IngredientsCorpus.ocrNoise(correct, noise, 2);
+    }
+
+    @Benchmark
+    public float compare() {
+        return IngredientsComparator.compare(correct, extracted);
+    }
+
+    @Benchmark
+    public double wordSimilarity() {
+        return WordSimilarity.similarity("ethylhexylglycerin", "ethylhexyigiycerin", IngredientsComparator.MIN_WORD_SIMILARITY);
+    }
+}
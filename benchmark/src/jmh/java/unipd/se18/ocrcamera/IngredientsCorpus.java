@@ -0,0 +1,79 @@
+package unipd.se18.ocrcamera;
+
+import java.util.Random;
+
+/**
+ * Generator of realistic lists of ingredients (INCI names) and of their OCR-like noisy versions
+ */
+final class IngredientsCorpus {
+
+    private static final String[] INCI_NAMES = {"Aqua", "Glycerin", "Sodium Laureth Sulfate",
+            "Cocamidopropyl Betaine", "Parfum", "Citric Acid", "Sodium Chloride", "Sodium Benzoate",
+            "Limonene", "Linalool", "Panthenol", "Tocopheryl Acetate", "Cetearyl Alcohol", "Dimethicone",
+            "Propylene Glycol", "Phenoxyethanol", "Ethylhexylglycerin", "Butyrospermum Parkii Butter",
+            "Caprylic/Capric Triglyceride", "Xanthan Gum", "Glyceryl Stearate", "PEG-100 Stearate",
+            "Cetyl Alcohol", "Stearic Acid", "Isopropyl Myristate", "Paraffinum Liquidum", "Petrolatum",
+            "Carbomer", "Triethanolamine", "Disodium EDTA", "Methylparaben", "Propylparaben",
+            "Hydroxyethylcellulose", "Polysorbate 20", "Sodium Hydroxide", "Allantoin", "Bisabolol",
+            "Butylene Glycol", "Niacinamide", "Sodium Hyaluronate", "Titanium Dioxide", "CI 77891",
+            "Zinc Oxide", "Benzyl Alcohol", "Potassium Sorbate", "Lactic Acid", "Coco-Glucoside",
+            "Sodium Lauroyl Sarcosinate", "Guar Hydroxypropyltrimonium Chloride", "Hexyl Cinnamal"};
+
+    //characters the OCR confuses, each with the one it's replaced by
+    private static final String CONFUSED = "iljIrtoqcemnuv";
+    private static final String CONFUSIONS = "jIilnrqoeonmvu";
+
+    private IngredientsCorpus() {
+    }
+
+    /**
+     * @param length number of ingredients
+     * @param seed seed of the random choices
+     * @return comma separated list of ingredients, like the ones in the test descriptions
+     */
+    static String ingredients(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                list.append(", ");
+            }
+            list.append(INCI_NAMES[random.nextInt(INCI_NAMES.length)]);
+        }
+        return list.toString();
+    }
+
+    /**
+     * @param text correct text
+     * @param noise probability of an error on each character, between 0 and 1
+     * @param seed seed of the random errors
+     * @return the text as an OCR could read it: confused characters, lost separators and line breaks
+     */
+    static String ocrNoise(String text, double noise, long seed) {
+        Random random = new Random(seed);
+        StringBuilder noisy = new StringBuilder(text.length());
+        int lineLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int confused = CONFUSED.indexOf(c);
+            if (random.nextDouble() < noise) {
+                if (confused >= 0) {
+                    noisy.append(CONFUSIONS.charAt(confused));
+                } else if (c == ',' || c == ' ') {
+                    //lost separator
+                } else {
+                    noisy.append(c).append(c);
+                }
+            } else {
+                noisy.append(c);
+            }
+
+            //the label is read line by line
+            if (++lineLength > 40 && c == ' ') {
+                noisy.append('\n');
+                lineLength = 0;
+            }
+        }
+        return noisy.toString();
+    }
+}
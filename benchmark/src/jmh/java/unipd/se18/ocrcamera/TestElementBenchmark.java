@@ -0,0 +1,51 @@
+package unipd.se18.ocrcamera;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the getters of TestElement used by the statistics and by the list of the results
+ */
+@State(Scope.Benchmark)
+public class TestElementBenchmark {
+
+    /**
+     * Number of ingredients in the description
+     */
+    @Param({"10", "40", "80"})
+    public int ingredients;
+
+    private TestElement element;
+
+    @Setup
+    public void setup() throws JSONException {
+        JSONObject description = new JSONObject();
+        description.put("ingredients", IngredientsCorpus.ingredients(ingredients, 1));
+        description.put("tags", new JSONArray().put("curved").put("glare").put("small text").put("italic"));
+        description.put("notes", "");
+        description.put("original_name", "IMG_0001.jpg");
+        element = new TestElement("IMG_0001.jpg", description, "IMG_0001");
+        element.setConfidence(87.5f);
+    }
+
+    @Benchmark
+    public String[] getIngredientsArray() throws JSONException {
+        return element.getIngredientsArray();
+    }
+
+    @Benchmark
+    public String[] getTags() throws JSONException {
+        return element.getTags();
+    }
+
+    @Benchmark
+    public float getConfidence() throws JSONException {
+        return element.getConfidence();
+    }
+}
@@ -0,0 +1,70 @@
+package unipd.se18.ocrcamera;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Benchmark of the helpers of Utils used while loading the tests
+ */
+@State(Scope.Benchmark)
+public class UtilsBenchmark {
+
+    private static final String PATH = "/storage/emulated/0/Pictures/OCRCameraDB/IMG_20181126_101010.jpg";
+
+    private JSONObject description;
+    private File descriptionFile;
+
+    @Setup
+    public void setup() throws JSONException, IOException {
+        JSONArray tags = new JSONArray();
+        for (int i = 0; i < 8; i++) {
+            tags.put("tag" + i);
+        }
+        description = new JSONObject();
+        description.put("ingredients", IngredientsCorpus.ingredients(40, 1));
+        description.put("tags", tags);
+
+        descriptionFile = File.createTempFile("UtilsBenchmark", ".txt");
+        FileOutputStream stream = new FileOutputStream(descriptionFile);
+        try {
+            stream.write(description.toString().getBytes("UTF-8"));
+        } finally {
+            stream.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        descriptionFile.delete();
+    }
+
+    @Benchmark
+    public String getFileExtension() {
+        return Utils.getFileExtension(PATH);
+    }
+
+    @Benchmark
+    public String getFilePrefix() {
+        return Utils.getFilePrefix(PATH);
+    }
+
+    @Benchmark
+    public String[] getStringArrayFromJSON() throws JSONException {
+        return Utils.getStringArrayFromJSON(description, "tags");
+    }
+
+    @Benchmark
+    public String getTextFromFile() {
+        return Utils.getTextFromFile(descriptionFile.getPath());
+    }
+}
@@ -0,0 +1,15 @@
+package android.graphics;
+
+/**
+ * Stand-in of the Android Bitmap, referenced by the benchmarked classes but never used by the benchmarks
+ */
+public final class Bitmap {
+
+    public int getWidth() {
+        throw new UnsupportedOperationException();
+    }
+
+    public int getHeight() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,26 @@
+package android.graphics;
+
+/**
+ * Stand-in of the Android BitmapFactory, referenced by the benchmarked classes but never used by the benchmarks
+ */
+public final class BitmapFactory {
+
+    public static class Options {
+        public boolean inJustDecodeBounds;
+        public int inSampleSize;
+        public int outWidth;
+        public int outHeight;
+    }
+
+    public static Bitmap decodeFile(String pathName) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static Bitmap decodeFile(String pathName, Options opts) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static Bitmap decodeByteArray(byte[] data, int offset, int length) {
+        throw new UnsupportedOperationException();
+    }
+}